@@ -1,9 +1,43 @@
-import io.FilePushbackReader;
+import io.InputSource;
+import io.MappedFileSource;
+import io.StreamSource;
+import parsing.datastructs.BinaryDocument;
+import parsing.datastructs.BinaryDocumentCache;
+import parsing.datastructs.Element;
+import parsing.datastructs.NodeDocument;
+import parsing.datastructs.TreePrinter;
+import parsing.datastructs.XMLSerializer;
+import parsing.events.CompactTreeBuilder;
+import parsing.events.LazyTreeBuilder;
+import parsing.events.RecordStreamer;
+import parsing.events.XMLHandler;
 import parsing.exceptions.IllFormedXMLException;
 import parsing.lexer.Tokenizer;
+import parsing.synal.Automata;
+import parsing.synal.ParallelAutomata;
+import parsing.synal.Parsers;
+import parsing.synal.TableDrivenAutomata;
 import parsing.synal.XMLAutomata;
 
+import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.function.Consumer;
 
 /**
  * XML parser and validator, by extent. It implements a small set of the entirety of the XML spec.
@@ -36,6 +70,8 @@ import java.io.FileNotFoundException;
  * NameChar  ::=  Letter | Digit |  '.' | '-' | '_' | ':'
  * Name      ::=  (Letter | '_' | ':') (NameChar)*
  *
+ * Non-ASCII code points are accepted in names according to the XML 1.0 NameStartChar/NameChar ranges (see spec.txt).
+ *
  * Literals
  *
  * AttValue       ::=  '"' ([^<&"])* '"' |  "'" ([^<&'])* "'"
@@ -83,31 +119,307 @@ import java.io.FileNotFoundException;
 public class Main {
 
     public static void main(String... args) {
-        if (args.length == 0) {
-            System.out.println("Usage: eceparser file1.xml file2.xml ...");
+        Options options = new Options();
+        ArrayList<String> files = new ArrayList<>();
+
+        for (String arg : args) {
+            if (arg.equals("--engine=descent"))
+                options.tableDriven = false;
+            else if (arg.equals("--engine=table"))
+                options.tableDriven = true;
+            else if (arg.equals("--time"))
+                options.timed = true;
+            else if (arg.equals("--debug"))
+                options.debug = true;
+            else if (arg.startsWith("--max-depth="))
+                options.maxDepth = Integer.parseInt(arg.substring("--max-depth=".length()));
+            else if (arg.startsWith("--records="))
+                options.recordName = arg.substring("--records=".length());
+            else if (arg.equals("--parallel"))
+                options.pool = ForkJoinPool.commonPool();
+            else if (arg.startsWith("--parallel="))
+                options.pool = new ForkJoinPool(Integer.parseInt(arg.substring("--parallel=".length())));
+            else if (arg.startsWith("--record-depth="))
+                options.recordDepth = Integer.parseInt(arg.substring("--record-depth=".length()));
+            else if (arg.equals("--batch"))
+                options.batchThreads = Runtime.getRuntime().availableProcessors();
+            else if (arg.startsWith("--batch="))
+                options.batchThreads = Integer.parseInt(arg.substring("--batch=".length()));
+            else if (arg.equals("--unordered"))
+                options.ordered = false;
+            else if (arg.equals("--compact"))
+                options.compact = true;
+            else if (arg.equals("--lazy"))
+                options.lazy = true;
+            else if (arg.equals("--xml"))
+                options.xml = true;
+            else if (arg.startsWith("--cache-dir="))
+                options.cacheDir = new File(arg.substring("--cache-dir=".length()));
+            else if (arg.equals("--quiet"))
+                options.quiet = true;
+            else if (arg.equals("--xml=pretty"))
+                options.xmlIndent = "\t";
+            else
+                files.add(arg);
+        }
+        //pretty printed XML is still XML
+        if (options.xmlIndent != null)
+            options.xml = true;
+        //a file is only read back by the engine and depth limit that accepted it
+        if (options.cacheDir != null)
+            options.cache = new BinaryDocumentCache(options.cacheDir,
+                    (options.tableDriven ? "table" : "descent") + "-" + options.maxDepth);
+
+        if (files.isEmpty()) {
+            System.out.println("Usage: eceparser [--engine=descent|table] [--time] [--debug] [--quiet] [--max-depth=N]" +
+                    " [--cache-dir=DIR]" +
+                    " [--parallel[=N]] [--records=NAME | --record-depth=N | --compact | --lazy | --xml[=pretty]]" +
+                    " [--batch[=N] [--unordered]]" +
+                    " file1.xml file2.xml ... (- reads standard input)");
             System.exit(-1);
         }
 
-        XMLAutomata._DEBUG = false;
+        //errors and timings still go to standard error
+        PrintStream out = options.quiet ? new PrintStream(new NullOutputStream()) : System.out;
+        if (options.batchThreads > 0) {
+            parseBatch(files, options, out);
+            return;
+        }
 
-        for (String arg : args) {
-            System.out.println("Parsing " + arg);
-
-            XMLAutomata parser;
-            try {
-                //start parsing with XMLAutomata, recursive descent parser /o/
-                parser = new XMLAutomata(new Tokenizer(new FilePushbackReader(arg)));
-
-                parser.parse();
-                parser.printResultingTree();
-                System.out.printf("Parsing %s success!%n", arg);
-            } catch (FileNotFoundException e) {
-                System.err.printf("%s file not found%n", arg);
-            } catch (IllFormedXMLException e) {
-                System.err.println("File " + arg + " Error: ");
-                e.printStackTrace();
+        for (String arg : files)
+            parseFile(arg, options, out, System.err);
+    }
+
+    /**
+     * Parses the files concurrently on batchThreads threads that live for the whole batch, so each one keeps its
+     * parsers from one file to the next. Every file's output is collected on its own and written out whole, either in
+     * argument order or as files finish.
+     */
+    private static void parseBatch(ArrayList<String> files, Options options, PrintStream out) {
+        ExecutorService executor = Executors.newFixedThreadPool(options.batchThreads);
+        CompletionService<FileReport> completion = new ExecutorCompletionService<>(executor);
+        Semaphore inFlight = new Semaphore(options.batchThreads);
+        ArrayDeque<Future<FileReport>> pending = new ArrayDeque<>();
+        int reported = 0;
+
+        try {
+            for (String arg : files) {
+                inFlight.acquire();
+                Future<FileReport> future = completion.submit(() -> {
+                    try {
+                        return FileReport.of(arg, options);
+                    } finally {
+                        inFlight.release();
+                    }
+                });
+
+                //report whatever is already done, so finished output doesn't pile up
+                if (options.ordered) {
+                    pending.add(future);
+                    while (!pending.isEmpty() && pending.peek().isDone())
+                        pending.poll().get().writeTo(out, System.err);
+                } else {
+                    Future<FileReport> done;
+                    while ((done = completion.poll()) != null) {
+                        done.get().writeTo(out, System.err);
+                        ++reported;
+                    }
+                }
+            }
+
+            if (options.ordered) {
+                while (!pending.isEmpty())
+                    pending.poll().get().writeTo(out, System.err);
+            } else {
+                for (; reported < files.size(); reported++)
+                    completion.take().get().writeTo(out, System.err);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            //every exception ends up in its file's report, only an Error such as running out of memory gets here
+            e.getCause().printStackTrace();
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private static void parseFile(String arg, Options options, PrintStream out, PrintStream err) {
+        out.println("Parsing " + arg);
+
+        Automata parser;
+        try {
+            //a file parsed before is printed from its binary form, without being tokenized again
+            File file = new File(arg);
+            boolean cacheable = options.cache != null && !arg.equals("-") && options.recordName == null
+                    && options.recordDepth == -1 && !options.xml;
+            if (cacheable) {
+                long start = System.nanoTime();
+                BinaryDocument cached = options.cache.lookup(file);
+                if (cached != null) {
+                    if (options.timed)
+                        err.printf("%s read from cache in %.3f ms%n", arg, (System.nanoTime() - start) / 1e6);
+                    if (!options.quiet)
+                        printCompactTree(file.getName(), cached, out);
+                    out.printf("Parsing %s success!%n", arg);
+                    return;
+                }
+            }
+
+            //recursive descent parser /o/ by default, the LL(1) table driven one on request
+            InputSource source = arg.equals("-") ? new StreamSource(System.in, "stdin") : new MappedFileSource(arg);
+            //when streaming records, each one is printed as soon as it's read and no tree is kept
+            Consumer<Element> printRecord = options.quiet ? record -> { }
+                    : record -> record.printSelfAndChildren("\t", out);
+            RecordStreamer records = null;
+            if (options.recordName != null)
+                records = new RecordStreamer(options.recordName, printRecord);
+            else if (options.recordDepth != -1)
+                records = new RecordStreamer(options.recordDepth, printRecord);
+
+            //the array based trees are built by their own handlers, the lazy one leaves values in the input
+            CompactTreeBuilder compact = null;
+            LazyTreeBuilder lazy = null;
+            //standard input is streamed and dropped as it's read, so its values have to be copied
+            if (records == null && options.lazy && !(source instanceof StreamSource))
+                lazy = new LazyTreeBuilder();
+            else if (records == null && (options.compact || options.lazy))
+                compact = new CompactTreeBuilder();
+
+            //a record stream or compact tree is read in document order, so it isn't split up
+            if (records != null || compact != null || lazy != null) {
+                Tokenizer toker = new Tokenizer(source);
+                XMLHandler handler = records != null ? records : compact != null ? compact : lazy;
+                parser = options.tableDriven ? new TableDrivenAutomata(toker, handler)
+                        : new XMLAutomata(toker, handler);
+            } else if (options.pool != null) {
+                parser = new ParallelAutomata(source, options.pool,
+                        options.tableDriven ? TableDrivenAutomata::new : XMLAutomata::new);
+            } else {
+                //each thread keeps its parser and resets it onto the next file
+                parser = options.tableDriven ? Parsers.table(source) : Parsers.descent(source);
             }
+            parser.setDebug(options.debug);
+            parser.setMaxDepth(options.maxDepth);
+
+            long start = System.nanoTime();
+            parser.parse();
+            if (options.timed)
+                err.printf("%s parsed in %.3f ms%n", arg, (System.nanoTime() - start) / 1e6);
+
+            if (cacheable) {
+                try {
+                    if (compact != null || lazy != null)
+                        options.cache.store(file, compact != null ? compact.getDocument() : lazy.getDocument());
+                    else
+                        options.cache.store(file, parser.getDocument());
+                } catch (IOException e) {
+                    err.printf("%s could not be cached: %s%n", arg, e.getMessage());
+                }
+            }
+
+            if (records != null) {
+                out.printf("Parsing %s success! %d records%n", arg, records.getRecordCount());
+            } else if (options.quiet) {
+                //nothing would be seen of the tree, so it isn't printed at all
+                out.printf("Parsing %s success!%n", arg);
+            } else if (compact != null || lazy != null) {
+                printCompactTree(parser.getFilename(), compact != null ? compact.getDocument() : lazy.getDocument(),
+                        out);
+                out.printf("Parsing %s success!%n", arg);
+            } else if (options.xml) {
+                //the tree written back as XML, instead of its structure
+                XMLSerializer serializer = new XMLSerializer(out);
+                serializer.setIndent(options.xmlIndent);
+                serializer.write(parser.getDocument());
+                serializer.flush();
+                out.printf("Parsing %s success!%n", arg);
+            } else {
+                parser.printResultingTree(out);
+                out.printf("Parsing %s success!%n", arg);
+            }
+        } catch (FileNotFoundException e) {
+            err.printf("%s file not found%n", arg);
+        } catch (IOException e) {
+            err.printf("%s could not be read: %s%n", arg, e.getMessage());
+        } catch (UncheckedIOException e) {
+            //a stream that fails halfway through the parse
+            err.printf("%s could not be read: %s%n", arg, e.getCause().getMessage());
+        } catch (IllFormedXMLException e) {
+            err.println("File " + arg + " Error: ");
+            e.printStackTrace(err);
+        }
+    }
+
+    //same layout as Automata.printResultingTree
+    private static void printCompactTree(String filename, NodeDocument document, PrintStream out) throws IOException {
+        out.println("\"" + filename + "\"" + " XML Document Version " + document.getVersion() +
+                ",Standalone " + (document.getStandalone() ? "yes" : "no") + ",Encoding " +
+                document.getEncoding() + ",Structure:");
+        if (document.getRoot() != NodeDocument.NONE)
+            new TreePrinter(out).print(document, document.getRoot());
+    }
+
+    //settled before any file is parsed, and only read after that
+    private static final class Options {
+        boolean tableDriven = false;
+        boolean timed = false;
+        boolean debug = false;
+        int maxDepth = XMLAutomata.DEFAULT_MAX_DEPTH;
+        String recordName = null;
+        int recordDepth = -1;
+        ForkJoinPool pool = null;
+        int batchThreads = 0;
+        boolean ordered = true;
+        boolean compact = false;
+        boolean lazy = false;
+        boolean xml = false;
+        String xmlIndent = null;
+        boolean quiet = false;
+        File cacheDir = null;
+        BinaryDocumentCache cache = null;
+    }
+
+    //what --quiet prints to
+    private static final class NullOutputStream extends OutputStream {
+        @Override
+        public void write(int b) {
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
         }
+    }
+
+    //the output of one file in batch mode, held until it's its turn to be written
+    private static final class FileReport {
+        private final String out;
+        private final String err;
 
+        private FileReport(String out, String err) {
+            this.out = out;
+            this.err = err;
+        }
+
+        static FileReport of(String arg, Options options) throws UnsupportedEncodingException {
+            ByteArrayOutputStream outBytes = new ByteArrayOutputStream();
+            ByteArrayOutputStream errBytes = new ByteArrayOutputStream();
+            try (PrintStream out = new PrintStream(outBytes, false, "UTF-8");
+                 PrintStream err = new PrintStream(errBytes, false, "UTF-8")) {
+                try {
+                    parseFile(arg, options, out, err);
+                } catch (RuntimeException e) {
+                    //a bug, but only this file's report shows it and the rest of the batch goes on
+                    err.println("File " + arg + " failed: ");
+                    e.printStackTrace(err);
+                }
+            }
+            return new FileReport(outBytes.toString("UTF-8"), errBytes.toString("UTF-8"));
+        }
+
+        void writeTo(PrintStream out, PrintStream err) {
+            out.print(this.out);
+            err.print(this.err);
+        }
     }
 }
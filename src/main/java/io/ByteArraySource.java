@@ -0,0 +1,62 @@
+package io;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * UTF-8 input that is already in a byte array, e.g. a message body. The array is read in place and never copied, so
+ * it must not change while it is being parsed.
+ */
+public class ByteArraySource implements InputSource {
+    private final byte[] bytes;
+    private final int offset;
+    private final int length;
+    private final String name;
+
+    public ByteArraySource(byte[] bytes, String name) {
+        this(bytes, 0, bytes.length, name);
+    }
+
+    public ByteArraySource(byte[] bytes, int offset, int length, String name) {
+        if (offset < 0 || length < 0 || offset + length > bytes.length)
+            throw new IndexOutOfBoundsException("[" + offset + ", " + (offset + length) + ") of " + bytes.length);
+
+        this.bytes = bytes;
+        this.offset = offset;
+        this.length = length;
+        this.name = name;
+    }
+
+    @Override
+    public int byteAt(int index) {
+        if (index >= length)
+            return EOF;
+        return bytes[offset + index] & 0xFF;
+    }
+
+    @Override
+    public boolean regionMatches(int index, String expected) {
+        int count = expected.length();
+        if (index + count > length)
+            return false;
+
+        for (int i = 0; i < count; i++) {
+            if (bytes[offset + index + i] != expected.charAt(i))
+                return false;
+        }
+        return true;
+    }
+
+    @Override
+    public String decode(int start, int end) {
+        return new String(bytes, offset + start, end - start, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public String getFilename() {
+        return name;
+    }
+
+    @Override
+    public void close() {
+    }
+}
@@ -0,0 +1,62 @@
+package io;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * UTF-8 input in the remaining bytes of a heap or direct {@link ByteBuffer}. Bytes are read with absolute gets from a
+ * view of the buffer, so neither its contents are copied nor its position moved.
+ */
+public class ByteBufferSource implements InputSource {
+    private final ByteBuffer bytes;
+    private final int limit;
+    private final String name;
+
+    public ByteBufferSource(ByteBuffer buffer, String name) {
+        this.bytes = buffer.slice();
+        this.limit = bytes.limit();
+        this.name = name;
+    }
+
+    @Override
+    public int byteAt(int index) {
+        if (index >= limit)
+            return EOF;
+        return bytes.get(index) & 0xFF;
+    }
+
+    @Override
+    public boolean regionMatches(int index, String expected) {
+        int length = expected.length();
+        if (index + length > limit)
+            return false;
+
+        for (int i = 0; i < length; i++) {
+            if (bytes.get(index + i) != expected.charAt(i))
+                return false;
+        }
+        return true;
+    }
+
+    @Override
+    public String decode(int start, int end) {
+        //a heap buffer decodes straight out of its array, a direct one has to be copied out first
+        if (bytes.hasArray())
+            return new String(bytes.array(), bytes.arrayOffset() + start, end - start, StandardCharsets.UTF_8);
+
+        byte[] span = new byte[end - start];
+        ByteBuffer view = bytes.duplicate();
+        view.position(start);
+        view.get(span);
+        return new String(span, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public String getFilename() {
+        return name;
+    }
+
+    @Override
+    public void close() {
+    }
+}
@@ -0,0 +1,14 @@
+package io;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Input that is already text, e.g. a String payload. The tokenizer works on UTF-8 byte offsets, so the text is
+ * encoded once up front; after that it is parsed like any other byte array.
+ */
+public class CharSequenceSource extends ByteArraySource {
+
+    public CharSequenceSource(CharSequence text, String name) {
+        super(text.toString().getBytes(StandardCharsets.UTF_8), name);
+    }
+}
@@ -0,0 +1,45 @@
+package io;
+
+import java.io.Closeable;
+
+/**
+ * Raw UTF-8 input consumed by the tokenizer. The source is addressed by absolute byte index, so lookahead is a plain
+ * index lookup: nothing has to be unread or allocated, and text is only decoded when a caller materializes a span.
+ * <p>
+ * Implementations read from a mapped file ({@link MappedFileSource}), memory the caller already has
+ * ({@link ByteArraySource}, {@link ByteBufferSource}, {@link CharSequenceSource}) or a stream ({@link StreamSource}).
+ * </p>
+ * <p>
+ * Indices are ints, so an input can be at most {@link #MAX_SIZE} bytes (just under 2 GB). Sources refuse anything
+ * larger with an IOException rather than wrap around.
+ * </p>
+ */
+public interface InputSource extends Closeable {
+    int EOF = -1;
+    //the largest input an int index can address
+    int MAX_SIZE = Integer.MAX_VALUE;
+
+    /**
+     * Returns the unsigned byte at {@code index}, or {@link #EOF} if the input ends before it.
+     */
+    int byteAt(int index);
+
+    /**
+     * Compares the bytes starting at {@code index} in place against the ASCII string {@code expected}.
+     */
+    boolean regionMatches(int index, String expected);
+
+    /**
+     * Decodes the UTF-8 bytes in [start, end) into a String.
+     */
+    String decode(int start, int end);
+
+    /**
+     * Tells the source that nothing before {@code index} will be read or decoded again. Sources that hold the whole
+     * input ignore this; streaming ones drop those bytes the next time they refill.
+     */
+    default void discardBefore(int index) {
+    }
+
+    String getFilename();
+}
@@ -0,0 +1,42 @@
+package io;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Memory-maps the whole file. Bytes are read straight out of the mapping; nothing is decoded up front, there is no
+ * synchronization and no pushback. A single mapping holds at most {@link InputSource#MAX_SIZE} bytes, larger files
+ * are refused.
+ */
+public class MappedFileSource extends ByteBufferSource {
+
+    public MappedFileSource(String filename) throws IOException {
+        this(new File(filename));
+    }
+
+    private MappedFileSource(File file) throws IOException {
+        super(map(file), file.getName());
+    }
+
+    private static MappedByteBuffer map(File file) throws IOException {
+        if (!file.exists() || file.isDirectory())
+            throw new FileNotFoundException();
+
+        //the mapping stays valid after the channel is closed
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            if (channel.size() > MAX_SIZE)
+                throw new IOException(file + " is " + channel.size() + " bytes, only files of up to " + MAX_SIZE +
+                        " bytes can be parsed");
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+    }
+
+    @Override
+    public void close() {
+        //the channel is closed as soon as the file is mapped, nothing is held open
+    }
+}
@@ -0,0 +1,71 @@
+package io;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Several [from, to) byte ranges of another source, read back to back as one input. Nothing is copied; the ranges
+ * are only mapped onto the parent when a byte is read. Closing a spliced source leaves the parent open, since other
+ * splices usually share it.
+ */
+public class SplicedSource implements InputSource {
+    private final InputSource parent;
+    private final int[] ranges;
+    //offsets[r] is where range r starts in this source, offsets[ranges.length / 2] is its length
+    private final int[] offsets;
+
+    public SplicedSource(InputSource parent, int... ranges) {
+        if (ranges.length % 2 != 0)
+            throw new IllegalArgumentException("Ranges come in [from, to) pairs");
+
+        this.parent = parent;
+        this.ranges = ranges.clone();
+        this.offsets = new int[ranges.length / 2 + 1];
+        for (int r = 0; r < ranges.length / 2; r++) {
+            if (ranges[r * 2] > ranges[r * 2 + 1])
+                throw new IllegalArgumentException("Range " + r + " ends before it starts");
+            offsets[r + 1] = offsets[r] + ranges[r * 2 + 1] - ranges[r * 2];
+        }
+    }
+
+    @Override
+    public int byteAt(int index) {
+        //a handful of ranges, a linear scan is all it takes
+        for (int r = 0; r < offsets.length - 1; r++) {
+            if (index < offsets[r + 1])
+                return parent.byteAt(ranges[r * 2] + index - offsets[r]);
+        }
+        return EOF;
+    }
+
+    @Override
+    public boolean regionMatches(int index, String expected) {
+        for (int i = 0; i < expected.length(); i++) {
+            if (byteAt(index + i) != expected.charAt(i))
+                return false;
+        }
+        return true;
+    }
+
+    @Override
+    public String decode(int start, int end) {
+        //spans within one range are decoded by the parent as they are
+        for (int r = 0; r < offsets.length - 1; r++) {
+            if (start >= offsets[r] && end <= offsets[r + 1])
+                return parent.decode(ranges[r * 2] + start - offsets[r], ranges[r * 2] + end - offsets[r]);
+        }
+
+        byte[] span = new byte[end - start];
+        for (int i = 0; i < span.length; i++)
+            span[i] = (byte) byteAt(start + i);
+        return new String(span, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public String getFilename() {
+        return parent.getFilename();
+    }
+
+    @Override
+    public void close() {
+    }
+}
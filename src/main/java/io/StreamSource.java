@@ -0,0 +1,181 @@
+package io;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * UTF-8 input read from a stream as the tokenizer gets to it, e.g. an HTTP body, without writing it anywhere first.
+ * Bytes are buffered from the oldest one the parser may still ask for (see {@link #discardBefore(int)}), so memory
+ * is bounded by how far back the parser looks rather than by the size of the input. Reading a discarded byte is a
+ * bug in the caller and throws IllegalStateException.
+ * <p>
+ * The channel has to be blocking. Read errors surface as {@link UncheckedIOException}, since the tokenizer can't
+ * throw checked exceptions from the middle of a token; so does a stream that runs past {@link #MAX_SIZE} bytes.
+ * </p>
+ */
+public class StreamSource implements InputSource {
+    private static final int INITIAL_BUFFER_SIZE = 8192;
+    //refills never read less than this, so a multi-byte sequence always fits
+    private static final int MIN_READ = 8;
+
+    private final ReadableByteChannel channel;
+    private final String name;
+    private byte[] buffer = new byte[INITIAL_BUFFER_SIZE];
+    //absolute index of buffer[0], and how much of the buffer holds input
+    private int bufferStart = 0;
+    private int filled = 0;
+    private int discardMark = 0;
+    private boolean finished = false;
+
+    public StreamSource(ReadableByteChannel channel, String name) {
+        this.channel = channel;
+        this.name = name;
+    }
+
+    public StreamSource(InputStream in, String name) {
+        this(Channels.newChannel(in), name);
+    }
+
+    //the characters are encoded to UTF-8 as they are read
+    public StreamSource(Reader reader, String name) {
+        this(new ReaderChannel(reader), name);
+    }
+
+    @Override
+    public int byteAt(int index) {
+        while (index - bufferStart >= filled) {
+            if (!fill())
+                return EOF;
+        }
+        if (index < bufferStart)
+            throw new IllegalStateException("Byte " + index + " of " + name + " has already been discarded");
+        return buffer[index - bufferStart] & 0xFF;
+    }
+
+    @Override
+    public boolean regionMatches(int index, String expected) {
+        for (int i = 0; i < expected.length(); i++) {
+            if (byteAt(index + i) != expected.charAt(i))
+                return false;
+        }
+        return true;
+    }
+
+    @Override
+    public String decode(int start, int end) {
+        if (end > start)
+            byteAt(end - 1);
+        if (start < bufferStart)
+            throw new IllegalStateException("Byte " + start + " of " + name + " has already been discarded");
+        return new String(buffer, start - bufferStart, end - start, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public void discardBefore(int index) {
+        discardMark = Math.max(discardMark, index);
+    }
+
+    //reads more input into the buffer, dropping discarded bytes or growing it first if needed. false at the end
+    private boolean fill() {
+        if (finished)
+            return false;
+
+        if (buffer.length - filled < MIN_READ) {
+            int dropped = Math.min(discardMark - bufferStart, filled);
+            if (dropped > 0) {
+                System.arraycopy(buffer, dropped, buffer, 0, filled - dropped);
+                filled -= dropped;
+                bufferStart += dropped;
+            }
+            if (buffer.length - filled < MIN_READ)
+                buffer = Arrays.copyOf(buffer, buffer.length * 2);
+        }
+
+        try {
+            //indices would wrap around past this, so the input may only end here
+            int addressable = MAX_SIZE - bufferStart - filled;
+            if (addressable == 0) {
+                if (channel.read(ByteBuffer.allocate(1)) == -1) {
+                    finished = true;
+                    return false;
+                }
+                throw new IOException(name + " is larger than " + MAX_SIZE + " bytes");
+            }
+
+            int read = channel.read(ByteBuffer.wrap(buffer, filled, Math.min(buffer.length - filled, addressable)));
+            if (read == -1) {
+                finished = true;
+                return false;
+            }
+            filled += read;
+            return true;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Reading " + name, e);
+        }
+    }
+
+    @Override
+    public String getFilename() {
+        return name;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    //encodes a Reader's characters to UTF-8 on demand. malformed surrogates become '?'
+    private static final class ReaderChannel implements ReadableByteChannel {
+        private final Reader reader;
+        private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        private final CharBuffer chars = CharBuffer.allocate(INITIAL_BUFFER_SIZE);
+        private boolean endOfInput = false;
+
+        ReaderChannel(Reader reader) {
+            this.reader = reader;
+            chars.flip();
+        }
+
+        @Override
+        public int read(ByteBuffer dst) throws IOException {
+            int before = dst.position();
+            while (true) {
+                CoderResult result = encoder.encode(chars, dst, endOfInput);
+                if (dst.position() > before || result.isOverflow())
+                    return dst.position() - before;
+                if (endOfInput) {
+                    encoder.flush(dst);
+                    return dst.position() > before ? dst.position() - before : -1;
+                }
+
+                chars.compact();
+                if (reader.read(chars) == -1)
+                    endOfInput = true;
+                chars.flip();
+            }
+        }
+
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+
+        @Override
+        public void close() throws IOException {
+            reader.close();
+        }
+    }
+}
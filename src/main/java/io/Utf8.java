@@ -0,0 +1,73 @@
+package io;
+
+/**
+ * Minimal UTF-8 decoder working directly on an {@link InputSource}. Callers are expected to handle bytes below 0x80
+ * themselves and only come here when the high bit of the lead byte is set.
+ */
+public final class Utf8 {
+    //what a malformed sequence decodes to. Negative like EOF so it belongs to no character class, but told apart
+    // from it
+    public static final int MALFORMED = -2;
+
+    private Utf8() {
+    }
+
+    /**
+     * Number of bytes in the sequence introduced by {@code lead}. Invalid lead bytes count as a single byte, which is
+     * then decoded as {@link #MALFORMED}.
+     */
+    public static int sequenceLength(int lead) {
+        if (lead < 0x80)
+            return 1;
+        if (lead >= 0xC2 && lead <= 0xDF)
+            return 2;
+        if (lead >= 0xE0 && lead <= 0xEF)
+            return 3;
+        if (lead >= 0xF0 && lead <= 0xF4)
+            return 4;
+        return 1;
+    }
+
+    /**
+     * Number of bytes the sequence starting at {@code index} really occupies: the lead byte's length if every
+     * continuation byte is present, 1 otherwise, so a truncated sequence never swallows the markup after it.
+     */
+    public static int sequenceLength(InputSource source, int index) {
+        int length = sequenceLength(source.byteAt(index));
+        for (int i = 1; i < length; i++) {
+            if ((source.byteAt(index + i) & 0xC0) != 0x80)
+                return 1;
+        }
+        return length;
+    }
+
+    /**
+     * Decodes the multi-byte sequence starting at {@code index}, including supplementary code points. Malformed,
+     * overlong, truncated and surrogate sequences decode to {@link #MALFORMED} rather than to U+FFFD, which is a
+     * perfectly good name character and would let invalid input through.
+     */
+    public static int decode(InputSource source, int index) {
+        int lead = source.byteAt(index);
+        if (lead < 0x80)
+            return lead;
+
+        int length = sequenceLength(lead);
+        if (length == 1)
+            return MALFORMED;
+
+        int codePoint = lead & (0xFF >> (length + 1));
+        for (int i = 1; i < length; i++) {
+            int b = source.byteAt(index + i);
+            if ((b & 0xC0) != 0x80)
+                return MALFORMED;
+            codePoint = (codePoint << 6) | (b & 0x3F);
+        }
+
+        if ((length == 3 && codePoint < 0x800)
+                || (length == 4 && (codePoint < 0x10000 || codePoint > Character.MAX_CODE_POINT))
+                || (codePoint >= Character.MIN_SURROGATE && codePoint <= Character.MAX_SURROGATE))
+            return MALFORMED;
+
+        return codePoint;
+    }
+}
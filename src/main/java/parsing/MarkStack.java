@@ -0,0 +1,53 @@
+package parsing;
+
+import java.util.Arrays;
+import java.util.EmptyStackException;
+
+/**
+ * Checkpoints for {@link Markable} implementations. A mark is just an int position on a primitive stack, so marking
+ * and rewinding are O(1) and nothing is copied or boxed.
+ */
+public class MarkStack {
+    private int[] marks = new int[64];
+    private int depth = 0;
+
+    public void push(int position) {
+        if (depth == marks.length)
+            marks = Arrays.copyOf(marks, depth * 2);
+        marks[depth++] = position;
+    }
+
+    public int pop() {
+        if (depth == 0)
+            throw new EmptyStackException();
+        return marks[--depth];
+    }
+
+    public int peek() {
+        if (depth == 0)
+            throw new EmptyStackException();
+        return marks[depth - 1];
+    }
+
+    /**
+     * The oldest active mark. Marks are pushed at or after the ones below them, so this is also the lowest position
+     * anything can still rewind to.
+     */
+    public int bottom() {
+        if (depth == 0)
+            throw new EmptyStackException();
+        return marks[0];
+    }
+
+    public boolean isEmpty() {
+        return depth == 0;
+    }
+
+    public int depth() {
+        return depth;
+    }
+
+    public void clear() {
+        depth = 0;
+    }
+}
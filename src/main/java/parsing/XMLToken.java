@@ -47,4 +47,110 @@ public class XMLToken {
     public final static String R_TOKEN_CHARDATA = "[^<&]+";
     public final static String TOKEN_EOF = ((char) -1) + "";
     public final static String LEXER_ERROR = "ERR";
+
+    //token kinds, as produced by the tokenizer. Each fixed token kind shares its name with the TOKEN_ constant above
+    public final static int KIND_EOF = 0;
+    public final static int KIND_ERROR = 1;
+    public final static int KIND_LETTER = 2;
+    public final static int KIND_DIGIT = 3;
+    public final static int KIND_MINUS = 4;
+    public final static int KIND_SINGLE_QUOTE = 5;
+    public final static int KIND_DOUBLE_QUOTE = 6;
+    public final static int KIND_PARENTHESES_LEFT = 7;
+    public final static int KIND_PARENTHESES_RIGHT = 8;
+    public final static int KIND_PLUS = 9;
+    public final static int KIND_COMMA = 10;
+    public final static int KIND_DOT = 11;
+    public final static int KIND_SLASH = 12;
+    public final static int KIND_COLON = 13;
+    public final static int KIND_EQUALS = 14;
+    public final static int KIND_QUESTION_MARK = 15;
+    public final static int KIND_SEMICOLON = 16;
+    public final static int KIND_EXCLAMATION = 17;
+    public final static int KIND_ASTERISK = 18;
+    public final static int KIND_HASHTAG = 19;
+    public final static int KIND_AT_SIGN = 20;
+    public final static int KIND_DOLLAR = 21;
+    public final static int KIND_UNDERSCORE = 22;
+    public final static int KIND_PERCENT = 23;
+    public final static int KIND_CARET = 24;
+    public final static int KIND_BIGGER_THAN = 25;
+    public final static int KIND_SMALLER_THAN = 26;
+    public final static int KIND_COMMENT_START = 27;
+    public final static int KIND_COMMENT_END = 28;
+    public final static int KIND_END_TAG_START = 29;
+    public final static int KIND_EMPTY_TAG_END = 30;
+    public final static int KIND_XML_DECL_START = 31;
+    public final static int KIND_XML_DECL_END = 32;
+    public final static int KIND_VERSION_KEYWORD = 33;
+    public final static int KIND_STANDALONE_KEYWORD = 34;
+    public final static int KIND_YES_KEYWORD = 35;
+    public final static int KIND_NO_KEYWORD = 36;
+    public final static int KIND_VERSION_1_0 = 37;
+    public final static int KIND_WHITESPACE = 38;
+    public final static int KIND_TAB = 39;
+    public final static int KIND_CARRIAGE_RETURN = 40;
+    public final static int KIND_LINEFEED = 41;
+    //maximal munch runs, their text is only available through the token span
+    public final static int KIND_NAME = 42;
+    public final static int KIND_NUMBER = 43;
+    public final static int KIND_CHARDATA = 44;
+    public final static int KIND_COUNT = 45;
+
+    private final static String[] KIND_DESCRIPTIONS = {
+            "EOF",
+            LEXER_ERROR,
+            R_TOKEN_LETTER,
+            R_TOKEN_DIGIT,
+            TOKEN_MINUS,
+            TOKEN_SINGLE_QUOTE,
+            TOKEN_DOUBLE_QUOTE,
+            TOKEN_PARENTHESES_LEFT,
+            TOKEN_PARENTHESES_RIGHT,
+            TOKEN_PLUS,
+            TOKEN_COMMA,
+            TOKEN_DOT,
+            TOKEN_SLASH,
+            TOKEN_COLON,
+            TOKEN_EQUALS,
+            TOKEN_QUESTION_MARK,
+            TOKEN_SEMICOLON,
+            TOKEN_EXCLAMATION,
+            TOKEN_ASTERISK,
+            TOKEN_HASHTAG,
+            TOKEN_AT_SIGN,
+            TOKEN_DOLLAR,
+            TOKEN_UNDERSCORE,
+            TOKEN_PERCENT,
+            TOKEN_CARET,
+            TOKEN_BIGGER_THAN,
+            TOKEN_SMALLER_THAN,
+            TOKEN_COMMENT_START,
+            TOKEN_COMMENT_END,
+            TOKEN_END_TAG_START,
+            TOKEN_EMPTY_TAG_END,
+            TOKEN_XML_DECL_START,
+            TOKEN_XML_DECL_END,
+            TOKEN_VERSION_KEYWORD,
+            TOKEN_STANDALONE_KEYWORD,
+            TOKEN_YES_KEYWORD,
+            TOKEN_NO_KEYWORD,
+            TOKEN_VERSION_1_0,
+            TOKEN_WHITESPACE,
+            TOKEN_TAB,
+            TOKEN_CARRIAGE_RETURN,
+            TOKEN_LINEFEED,
+            "Name",
+            "Number",
+            "CharData"
+    };
+
+    /**
+     * Human readable form of a token kind, for error and debug messages.
+     */
+    public static String describe(int kind) {
+        if (kind < 0 || kind >= KIND_COUNT)
+            return LEXER_ERROR;
+        return KIND_DESCRIPTIONS[kind];
+    }
 }
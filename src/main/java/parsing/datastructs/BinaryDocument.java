@@ -0,0 +1,342 @@
+package parsing.datastructs;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A document in the binary form {@link BinaryDocumentWriter} writes, read in place: opening one only checks its
+ * header, and every accessor reads the few bytes it needs. Mapped from a file, the tree costs no heap beyond the
+ * Strings that are asked for, each decoded once and then kept.
+ * <p>
+ * The form is big endian, every int 4-byte aligned:
+ * </p>
+ * <pre>
+ * header    magic "ECEX", format version, source size (long), source last modified (long), source hash (long),
+ *           standalone (int), name count, value count, node count, attribute count, content count,
+ *           version length, version (UTF-8, padded to 4 bytes)
+ * tables    name offsets (name count + 1), value offsets (value count + 1)
+ * nodes     parents, next siblings, name ids, first attributes, first contents (node count each)
+ * attributes name ids, value ids (attribute count each)
+ * contents  value ids (content count)
+ * strings   name bytes, then value bytes (UTF-8)
+ * </pre>
+ * Nodes are in document order, and a node's attributes and contents run up to the next node's. Names and values are
+ * tables of distinct Strings; attribute values and contents share the value table.
+ * <p>
+ * The header is checked against the size of the buffer when the document is opened, and a damaged one is an
+ * IOException. The rest is only read when asked for, so a name or value id that is out of range surfaces then, as an
+ * {@link UncheckedIOException}, unless {@link #verify()} has checked every table up front.
+ * </p>
+ */
+public class BinaryDocument implements NodeDocument {
+    public static final int MAGIC = 0x45434558;
+    public static final int FORMAT_VERSION = 1;
+    //up to the version, which is the only part of variable length
+    static final int HEADER_SIZE = 60;
+
+    private final ByteBuffer buffer;
+    private final String version;
+    private final boolean standalone;
+    private final int nameCount;
+    private final int valueCount;
+    private final int nodeCount;
+    private final int attributeCount;
+    private final int contentCount;
+
+    //where each section starts
+    private final int nameOffsets;
+    private final int valueOffsets;
+    private final int parents;
+    private final int nextSiblings;
+    private final int nameIds;
+    private final int attributeStarts;
+    private final int contentStarts;
+    private final int attributeNameIds;
+    private final int attributeValueIds;
+    private final int contentValueIds;
+    private final int nameBytes;
+    private final int valueBytes;
+
+    //decoded as they are read
+    private final String[] names;
+    private String[] values;
+
+    public BinaryDocument(ByteBuffer buffer) throws IOException {
+        //absolute reads only, the buffer's position and limit don't matter after this
+        this.buffer = buffer.slice();
+        if (this.buffer.capacity() < HEADER_SIZE || this.buffer.getInt(0) != MAGIC)
+            throw new IOException("Not a binary document");
+        if (this.buffer.getInt(4) != FORMAT_VERSION)
+            throw new IOException("Binary document format " + this.buffer.getInt(4) + ", expected " + FORMAT_VERSION);
+
+        int capacity = this.buffer.capacity();
+        standalone = this.buffer.getInt(32) != 0;
+        nameCount = this.buffer.getInt(36);
+        valueCount = this.buffer.getInt(40);
+        nodeCount = this.buffer.getInt(44);
+        attributeCount = this.buffer.getInt(48);
+        contentCount = this.buffer.getInt(52);
+        int versionLength = this.buffer.getInt(56);
+        //everything is checked against the capacity before it is used as an offset, in longs so nothing overflows
+        if (versionLength < 0 || versionLength > capacity - HEADER_SIZE)
+            throw new IOException("Corrupt binary document, version of " + versionLength + " bytes");
+        if (nameCount < 0 || valueCount < 0 || nodeCount < 0 || attributeCount < 0 || contentCount < 0)
+            throw new IOException("Corrupt binary document, negative count");
+        long tables = HEADER_SIZE + align(versionLength) + ((long) nameCount + 1 + valueCount + 1
+                + 5L * nodeCount + 2L * attributeCount + contentCount) * 4;
+        //a document cut short is caught here rather than halfway through reading it
+        if (tables > capacity)
+            throw new IOException("Truncated binary document");
+        version = decode(HEADER_SIZE, versionLength);
+
+        nameOffsets = HEADER_SIZE + align(versionLength);
+        valueOffsets = nameOffsets + (nameCount + 1) * 4;
+        parents = valueOffsets + (valueCount + 1) * 4;
+        nextSiblings = parents + nodeCount * 4;
+        nameIds = nextSiblings + nodeCount * 4;
+        attributeStarts = nameIds + nodeCount * 4;
+        contentStarts = attributeStarts + nodeCount * 4;
+        attributeNameIds = contentStarts + nodeCount * 4;
+        attributeValueIds = attributeNameIds + attributeCount * 4;
+        contentValueIds = attributeValueIds + attributeCount * 4;
+        nameBytes = contentValueIds + contentCount * 4;
+        int nameLength = this.buffer.getInt(valueOffsets - 4);
+        int valueLength = this.buffer.getInt(parents - 4);
+        if (nameLength < 0 || valueLength < 0 || (long) nameBytes + nameLength + valueLength != capacity)
+            throw new IOException("Truncated binary document");
+        valueBytes = nameBytes + nameLength;
+
+        names = new String[nameCount];
+    }
+
+    /**
+     * Maps the file read only. The mapping stays valid after the channel is closed.
+     */
+    public static BinaryDocument map(File file) throws IOException {
+        if (!file.isFile())
+            throw new FileNotFoundException(file.getPath());
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            return new BinaryDocument(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    /**
+     * Checks every id, offset and link in the document against the tables they point into, so that none of the
+     * accessors can find it damaged afterwards. This reads the whole document once.
+     */
+    public void verify() throws IOException {
+        verifyOffsets(nameOffsets, nameCount, valueBytes - nameBytes);
+        verifyOffsets(valueOffsets, valueCount, buffer.capacity() - valueBytes);
+        for (int node = 0; node < nodeCount; node++) {
+            //nodes are in document order, so a parent comes before its children and a sibling after
+            int parent = buffer.getInt(parents + node * 4);
+            if (node == 0 ? parent != NONE : parent < 0 || parent >= node)
+                throw new IOException("Corrupt binary document, parent " + parent + " of node " + node);
+            int nextSibling = buffer.getInt(nextSiblings + node * 4);
+            if (nextSibling != NONE && (nextSibling <= node || nextSibling >= nodeCount))
+                throw new IOException("Corrupt binary document, next sibling " + nextSibling + " of node " + node);
+            verifyIds(nameIds + node * 4, 1, nameCount, "name");
+        }
+        verifyStarts(attributeStarts, attributeCount, "attribute");
+        verifyStarts(contentStarts, contentCount, "content");
+        verifyIds(attributeNameIds, attributeCount, nameCount, "name");
+        verifyIds(attributeValueIds, attributeCount, valueCount, "value");
+        verifyIds(contentValueIds, contentCount, valueCount, "value");
+    }
+
+    //count + 1 offsets that start at 0, never decrease and end at length
+    private void verifyOffsets(int offsets, int count, int length) throws IOException {
+        int previous = 0;
+        for (int id = 0; id <= count; id++) {
+            int offset = buffer.getInt(offsets + id * 4);
+            if (offset < previous || offset > length || (id == 0 && offset != 0) || (id == count && offset != length))
+                throw new IOException("Corrupt binary document, string offset " + offset + " of " + length);
+            previous = offset;
+        }
+    }
+
+    //the first attribute or content of every node, which never decrease and stay within count
+    private void verifyStarts(int starts, int count, String what) throws IOException {
+        int previous = 0;
+        for (int node = 0; node < nodeCount; node++) {
+            int start = buffer.getInt(starts + node * 4);
+            if (start < previous || start > count || (node == 0 && start != 0))
+                throw new IOException("Corrupt binary document, first " + what + " " + start + " of " + count);
+            previous = start;
+        }
+    }
+
+    private void verifyIds(int ids, int count, int tableSize, String what) throws IOException {
+        for (int i = 0; i < count; i++) {
+            int id = buffer.getInt(ids + i * 4);
+            if (id < 0 || id >= tableSize)
+                throw new IOException("Corrupt binary document, " + what + " id " + id + " of " + tableSize);
+        }
+    }
+
+    static int align(int length) {
+        return (length + 3) & ~3;
+    }
+
+    public long getSourceSize() {
+        return buffer.getLong(8);
+    }
+
+    public long getSourceModified() {
+        return buffer.getLong(16);
+    }
+
+    public long getSourceHash() {
+        return buffer.getLong(24);
+    }
+
+    @Override
+    public String getEncoding() {
+        return "UTF-8";
+    }
+
+    @Override
+    public String getVersion() {
+        return version;
+    }
+
+    @Override
+    public boolean getStandalone() {
+        return standalone;
+    }
+
+    @Override
+    public int getRoot() {
+        return nodeCount == 0 ? NONE : 0;
+    }
+
+    @Override
+    public int getNodeCount() {
+        return nodeCount;
+    }
+
+    @Override
+    public int getParent(int node) {
+        return buffer.getInt(parents + checkNode(node) * 4);
+    }
+
+    @Override
+    public int getFirstChild(int node) {
+        return node + 1 < nodeCount && getParent(node + 1) == node ? node + 1 : NONE;
+    }
+
+    @Override
+    public int getNextSibling(int node) {
+        return buffer.getInt(nextSiblings + checkNode(node) * 4);
+    }
+
+    @Override
+    public String getTagName(int node) {
+        return name(getNameId(node));
+    }
+
+    @Override
+    public int getNameId(int node) {
+        return buffer.getInt(nameIds + checkNode(node) * 4);
+    }
+
+    @Override
+    public int getAttributeCount(int node) {
+        return attributeEnd(node) - buffer.getInt(attributeStarts + checkNode(node) * 4);
+    }
+
+    @Override
+    public String getAttributeName(int node, int index) {
+        return name(buffer.getInt(attributeNameIds + attributeIndex(node, index) * 4));
+    }
+
+    @Override
+    public String getAttributeValue(int node, int index) {
+        return value(buffer.getInt(attributeValueIds + attributeIndex(node, index) * 4));
+    }
+
+    @Override
+    public String getAttributeValue(int node, String name) {
+        int start = buffer.getInt(attributeStarts + checkNode(node) * 4);
+        for (int attribute = start; attribute < attributeEnd(node); attribute++) {
+            if (name(buffer.getInt(attributeNameIds + attribute * 4)).equals(name))
+                return value(buffer.getInt(attributeValueIds + attribute * 4));
+        }
+        return null;
+    }
+
+    @Override
+    public int getContentCount(int node) {
+        int end = node + 1 < nodeCount ? buffer.getInt(contentStarts + (node + 1) * 4) : contentCount;
+        return end - buffer.getInt(contentStarts + checkNode(node) * 4);
+    }
+
+    @Override
+    public String getContent(int node, int index) {
+        if (index < 0 || index >= getContentCount(node))
+            throw new IndexOutOfBoundsException("Content " + index + " of " + getContentCount(node));
+        int content = buffer.getInt(contentStarts + node * 4) + index;
+        return value(buffer.getInt(contentValueIds + content * 4));
+    }
+
+    private int checkNode(int node) {
+        if (node < 0 || node >= nodeCount)
+            throw new IndexOutOfBoundsException("Node " + node + " of " + nodeCount);
+        return node;
+    }
+
+    private int attributeEnd(int node) {
+        return node + 1 < nodeCount ? buffer.getInt(attributeStarts + (node + 1) * 4) : attributeCount;
+    }
+
+    private int attributeIndex(int node, int index) {
+        if (index < 0 || index >= getAttributeCount(node))
+            throw new IndexOutOfBoundsException("Attribute " + index + " of " + getAttributeCount(node));
+        return buffer.getInt(attributeStarts + node * 4) + index;
+    }
+
+    private String name(int id) {
+        if (id < 0 || id >= nameCount)
+            throw corrupt("name id " + id + " of " + nameCount);
+        if (names[id] == null)
+            names[id] = string(nameOffsets, id, nameBytes, valueBytes);
+        return names[id];
+    }
+
+    private String value(int id) {
+        if (id < 0 || id >= valueCount)
+            throw corrupt("value id " + id + " of " + valueCount);
+        //values may be many and few of them read, so the table only exists once one is
+        if (values == null)
+            values = new String[valueCount];
+        if (values[id] == null)
+            values[id] = string(valueOffsets, id, valueBytes, buffer.capacity());
+        return values[id];
+    }
+
+    //string id of a table, whose bytes have to lie in [bytes, end)
+    private String string(int offsets, int id, int bytes, int end) {
+        int start = buffer.getInt(offsets + id * 4);
+        int length = buffer.getInt(offsets + (id + 1) * 4) - start;
+        if (start < 0 || length < 0 || (long) bytes + start + length > end)
+            throw corrupt("string " + id + " at " + start + ", " + length + " bytes");
+        return decode(bytes + start, length);
+    }
+
+    private static UncheckedIOException corrupt(String what) {
+        return new UncheckedIOException(new IOException("Corrupt binary document, " + what));
+    }
+
+    private String decode(int offset, int length) {
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++)
+            bytes[i] = buffer.get(offset + i);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
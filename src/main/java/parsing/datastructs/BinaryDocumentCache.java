@@ -0,0 +1,131 @@
+package parsing.datastructs;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+/**
+ * A directory of {@link BinaryDocument}s, one per source file, so a file that was parsed before can be read back
+ * without being tokenized again. A binary form is only used while the source's size, modification time and CRC-32
+ * all still match the ones it was written with; checking them reads the source once, which is far cheaper than
+ * parsing it. A stale or unreadable binary form is simply not found, and the next store replaces it: a binary form
+ * is checked whole before it is handed out, so reading one never fails halfway through.
+ * <p>
+ * Whether a source is in the cache depends on the parser that read it: another engine, or a lower depth limit, may
+ * reject a file this one accepted. The variant a cache is made with names the parser's configuration, and caches of
+ * different variants share a directory without finding each other's binary forms.
+ * </p>
+ * <p>
+ * Binary forms are written to a temporary file and moved into place, so concurrent readers and writers, in this
+ * process or another, only ever see whole ones.
+ * </p>
+ */
+public class BinaryDocumentCache {
+    private static final String SUFFIX = ".ecex";
+
+    private final File directory;
+    private final String variant;
+
+    public BinaryDocumentCache(File directory) {
+        this(directory, "");
+    }
+
+    public BinaryDocumentCache(File directory, String variant) {
+        this.directory = directory;
+        this.variant = variant;
+    }
+
+    /**
+     * The binary form of the source, null if there is none or it no longer matches the source.
+     */
+    public BinaryDocument lookup(File source) throws IOException {
+        File cached = cacheFileOf(source);
+        if (!cached.isFile())
+            return null;
+
+        BinaryDocument document;
+        try {
+            document = BinaryDocument.map(cached);
+            document.verify();
+        } catch (IOException e) {
+            return null;
+        }
+        //the cheap checks first, the hash reads the whole source
+        if (document.getSourceSize() != source.length() || document.getSourceModified() != source.lastModified()
+                || document.getSourceHash() != hash(source))
+            return null;
+        return document;
+    }
+
+    public void store(File source, XMLDocument document) throws IOException {
+        store(source, (writer, out) -> writer.write(document, out));
+    }
+
+    public void store(File source, NodeDocument document) throws IOException {
+        store(source, (writer, out) -> writer.write(document, out));
+    }
+
+    //the temporary file is gone afterwards whether it was moved into place or writing it failed
+    private void store(File source, WriteStep step) throws IOException {
+        BinaryDocumentWriter writer = newWriter(source);
+        File temporary = newTemporaryFile(source);
+        try {
+            try (OutputStream out = new FileOutputStream(temporary)) {
+                step.write(writer, out);
+            }
+            moveIntoPlace(temporary, cacheFileOf(source));
+        } finally {
+            Files.deleteIfExists(temporary.toPath());
+        }
+    }
+
+    //stamped before the source is hashed, so a change while hashing leaves a stale stamp rather than a wrong one
+    private static BinaryDocumentWriter newWriter(File source) throws IOException {
+        long size = source.length();
+        long modified = source.lastModified();
+        return new BinaryDocumentWriter(size, modified, hash(source));
+    }
+
+    private File newTemporaryFile(File source) throws IOException {
+        Files.createDirectories(directory.toPath());
+        return File.createTempFile(source.getName(), ".tmp", directory);
+    }
+
+    private static void moveIntoPlace(File temporary, File cached) throws IOException {
+        try {
+            Files.move(temporary.toPath(), cached.toPath(), StandardCopyOption.ATOMIC_MOVE,
+                    StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temporary.toPath(), cached.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    //the name of the file, told apart from files of the same name elsewhere by a hash of its path
+    private File cacheFileOf(File source) throws IOException {
+        String path = source.getCanonicalPath();
+        String name = source.getName() + "-" + Integer.toHexString(path.hashCode());
+        return new File(directory, (variant.isEmpty() ? name : name + "-" + variant) + SUFFIX);
+    }
+
+    static long hash(File source) throws IOException {
+        CRC32 crc = new CRC32();
+        try (FileChannel channel = FileChannel.open(source.toPath(), StandardOpenOption.READ)) {
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            crc.update(mapped);
+        }
+        return crc.getValue();
+    }
+
+    //what a store writes to the temporary file, with one of the writer's overloads
+    private interface WriteStep {
+        void write(BinaryDocumentWriter writer, OutputStream out) throws IOException;
+    }
+}
@@ -0,0 +1,257 @@
+package parsing.datastructs;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Writes documents in the binary form {@link BinaryDocument} reads, stamped with the size, modification time and
+ * hash of the file they were parsed from so a reader can tell whether they still match it. The tree is laid out in
+ * memory first, every String once, then written in one pass. A writer can be used for any number of documents.
+ */
+public class BinaryDocumentWriter {
+    private final long sourceSize;
+    private final long sourceModified;
+    private final long sourceHash;
+
+    private final ArrayList<String> names = new ArrayList<>();
+    private final HashMap<String, Integer> nameIds = new HashMap<>();
+    private final ArrayList<String> values = new ArrayList<>();
+    private final HashMap<String, Integer> valueIds = new HashMap<>();
+
+    private int nodeCount;
+    private int[] parents = new int[64];
+    private int[] nextSiblings = new int[64];
+    private int[] nodeNameIds = new int[64];
+    private int[] attributeStarts = new int[64];
+    private int[] contentStarts = new int[64];
+    private int attributeCount;
+    private int[] attributeNameIds = new int[64];
+    private int[] attributeValueIds = new int[64];
+    private int contentCount;
+    private int[] contentValueIds = new int[64];
+
+    //what the document is written through, ints go in big endian like a DataOutputStream's
+    private final ByteBuffer chunk = ByteBuffer.allocate(65536);
+    private OutputStream out;
+
+    public BinaryDocumentWriter(long sourceSize, long sourceModified, long sourceHash) {
+        this.sourceSize = sourceSize;
+        this.sourceModified = sourceModified;
+        this.sourceHash = sourceHash;
+    }
+
+    public void write(XMLDocument document, OutputStream out) throws IOException {
+        clear();
+        Element root = document.getRoot();
+        //a document that was never parsed into has a root without a name
+        if (root != null && root.getTagName() != null)
+            addTree(root);
+        writeTo(document.getVersion(), document.getStandalone(), out);
+    }
+
+    public void write(NodeDocument document, OutputStream out) throws IOException {
+        clear();
+        //already numbered in document order, so the nodes are taken as they are
+        for (int node = 0; node < document.getNodeCount(); node++) {
+            int added = addNode(document.getParent(node), document.getTagName(node));
+            nextSiblings[added] = document.getNextSibling(node);
+            for (int i = 0; i < document.getAttributeCount(node); i++)
+                addAttribute(document.getAttributeName(node, i), document.getAttributeValue(node, i));
+            for (int i = 0; i < document.getContentCount(node); i++)
+                addContent(document.getContent(node, i));
+        }
+        writeTo(document.getVersion(), document.getStandalone(), out);
+    }
+
+    private void clear() {
+        names.clear();
+        nameIds.clear();
+        values.clear();
+        valueIds.clear();
+        nodeCount = 0;
+        attributeCount = 0;
+        contentCount = 0;
+    }
+
+    //numbers the elements in document order, with a stack on the heap like the rest of the tree walks
+    private void addTree(Element root) {
+        Element[] openElements = new Element[16];
+        int[] openNodes = new int[16];
+        int[] nextChildren = new int[16];
+        int[] lastChildren = new int[16];
+
+        openElements[0] = root;
+        openNodes[0] = addElement(root, NodeDocument.NONE);
+        lastChildren[0] = NodeDocument.NONE;
+        int depth = 1;
+        while (depth > 0) {
+            ArrayList<Element> children = openElements[depth - 1].getChildren();
+            int next = nextChildren[depth - 1]++;
+            if (next == children.size()) {
+                openElements[--depth] = null;
+                continue;
+            }
+
+            int node = addElement(children.get(next), openNodes[depth - 1]);
+            if (lastChildren[depth - 1] != NodeDocument.NONE)
+                nextSiblings[lastChildren[depth - 1]] = node;
+            lastChildren[depth - 1] = node;
+
+            if (depth == openElements.length) {
+                openElements = Arrays.copyOf(openElements, depth * 2);
+                openNodes = Arrays.copyOf(openNodes, depth * 2);
+                nextChildren = Arrays.copyOf(nextChildren, depth * 2);
+                lastChildren = Arrays.copyOf(lastChildren, depth * 2);
+            }
+            openElements[depth] = children.get(next);
+            openNodes[depth] = node;
+            nextChildren[depth] = 0;
+            lastChildren[depth++] = NodeDocument.NONE;
+        }
+    }
+
+    private int addElement(Element element, int parent) {
+        int node = addNode(parent, element.getTagName());
+        for (Map.Entry<String, String> attribute : element.attributeNameValues().entrySet())
+            addAttribute(attribute.getKey(), attribute.getValue());
+        for (String content : element.getContents())
+            addContent(content);
+        return node;
+    }
+
+    private int addNode(int parent, String name) {
+        if (nodeCount == parents.length) {
+            int capacity = nodeCount * 2;
+            parents = Arrays.copyOf(parents, capacity);
+            nextSiblings = Arrays.copyOf(nextSiblings, capacity);
+            nodeNameIds = Arrays.copyOf(nodeNameIds, capacity);
+            attributeStarts = Arrays.copyOf(attributeStarts, capacity);
+            contentStarts = Arrays.copyOf(contentStarts, capacity);
+        }
+        parents[nodeCount] = parent;
+        nextSiblings[nodeCount] = NodeDocument.NONE;
+        nodeNameIds[nodeCount] = idOf(name, names, nameIds);
+        attributeStarts[nodeCount] = attributeCount;
+        contentStarts[nodeCount] = contentCount;
+        return nodeCount++;
+    }
+
+    private void addAttribute(String name, String value) {
+        if (attributeCount == attributeNameIds.length) {
+            attributeNameIds = Arrays.copyOf(attributeNameIds, attributeCount * 2);
+            attributeValueIds = Arrays.copyOf(attributeValueIds, attributeCount * 2);
+        }
+        attributeNameIds[attributeCount] = idOf(name, names, nameIds);
+        attributeValueIds[attributeCount++] = idOf(value, values, valueIds);
+    }
+
+    private void addContent(String content) {
+        if (contentCount == contentValueIds.length)
+            contentValueIds = Arrays.copyOf(contentValueIds, contentCount * 2);
+        contentValueIds[contentCount++] = idOf(content, values, valueIds);
+    }
+
+    private static int idOf(String string, ArrayList<String> table, HashMap<String, Integer> ids) {
+        Integer id = ids.get(string);
+        if (id != null)
+            return id;
+        ids.put(string, table.size());
+        table.add(string);
+        return table.size() - 1;
+    }
+
+    private void writeTo(String version, boolean standalone, OutputStream out) throws IOException {
+        byte[][] nameBytes = encode(names);
+        byte[][] valueBytes = encode(values);
+        byte[] versionBytes = version.getBytes(StandardCharsets.UTF_8);
+
+        this.out = out;
+        chunk.clear();
+        putInt(BinaryDocument.MAGIC);
+        putInt(BinaryDocument.FORMAT_VERSION);
+        putLong(sourceSize);
+        putLong(sourceModified);
+        putLong(sourceHash);
+        putInt(standalone ? 1 : 0);
+        putInt(names.size());
+        putInt(values.size());
+        putInt(nodeCount);
+        putInt(attributeCount);
+        putInt(contentCount);
+        putInt(versionBytes.length);
+        putBytes(versionBytes);
+        putBytes(new byte[BinaryDocument.align(versionBytes.length) - versionBytes.length]);
+
+        putOffsets(nameBytes);
+        putOffsets(valueBytes);
+        putInts(parents, nodeCount);
+        putInts(nextSiblings, nodeCount);
+        putInts(nodeNameIds, nodeCount);
+        putInts(attributeStarts, nodeCount);
+        putInts(contentStarts, nodeCount);
+        putInts(attributeNameIds, attributeCount);
+        putInts(attributeValueIds, attributeCount);
+        putInts(contentValueIds, contentCount);
+        for (byte[] bytes : nameBytes)
+            putBytes(bytes);
+        for (byte[] bytes : valueBytes)
+            putBytes(bytes);
+        drain();
+        this.out = null;
+    }
+
+    private static byte[][] encode(ArrayList<String> table) {
+        byte[][] encoded = new byte[table.size()][];
+        for (int i = 0; i < encoded.length; i++)
+            encoded[i] = table.get(i).getBytes(StandardCharsets.UTF_8);
+        return encoded;
+    }
+
+    //where every string starts in its bytes, and where the last one ends
+    private void putOffsets(byte[][] strings) throws IOException {
+        int offset = 0;
+        for (byte[] bytes : strings) {
+            putInt(offset);
+            offset += bytes.length;
+        }
+        putInt(offset);
+    }
+
+    private void putInts(int[] ints, int count) throws IOException {
+        for (int i = 0; i < count; i++)
+            putInt(ints[i]);
+    }
+
+    private void putInt(int value) throws IOException {
+        if (chunk.remaining() < 4)
+            drain();
+        chunk.putInt(value);
+    }
+
+    private void putLong(long value) throws IOException {
+        if (chunk.remaining() < 8)
+            drain();
+        chunk.putLong(value);
+    }
+
+    private void putBytes(byte[] bytes) throws IOException {
+        for (int offset = 0; offset < bytes.length; ) {
+            if (!chunk.hasRemaining())
+                drain();
+            int length = Math.min(chunk.remaining(), bytes.length - offset);
+            chunk.put(bytes, offset, length);
+            offset += length;
+        }
+    }
+
+    private void drain() throws IOException {
+        out.write(chunk.array(), 0, chunk.position());
+        chunk.clear();
+    }
+}
@@ -0,0 +1,83 @@
+package parsing.datastructs;
+
+/**
+ * A movable view of one element of a {@link NodeDocument}. Moving it only changes a node number, so one cursor
+ * can walk the whole tree without allocating; the moves return false and leave it where it is when there is nowhere
+ * to go.
+ */
+public class CompactCursor {
+    private final NodeDocument document;
+    private int node;
+
+    //starts at the root
+    public CompactCursor(NodeDocument document) {
+        this.document = document;
+        this.node = document.getRoot();
+    }
+
+    public int getNode() {
+        return node;
+    }
+
+    public void moveTo(int node) {
+        if (node < 0 || node >= document.getNodeCount())
+            throw new IndexOutOfBoundsException("Node " + node + " of " + document.getNodeCount());
+        this.node = node;
+    }
+
+    public boolean toParent() {
+        return move(document.getParent(node));
+    }
+
+    public boolean toFirstChild() {
+        return move(document.getFirstChild(node));
+    }
+
+    public boolean toNextSibling() {
+        return move(document.getNextSibling(node));
+    }
+
+    private boolean move(int to) {
+        if (to == NodeDocument.NONE)
+            return false;
+        node = to;
+        return true;
+    }
+
+    public boolean hasChildren() {
+        return document.getFirstChild(node) != NodeDocument.NONE;
+    }
+
+    public String getTagName() {
+        return document.getTagName(node);
+    }
+
+    public int getNameId() {
+        return document.getNameId(node);
+    }
+
+    public int getAttributeCount() {
+        return document.getAttributeCount(node);
+    }
+
+    public String getAttributeName(int index) {
+        return document.getAttributeName(node, index);
+    }
+
+    public String getAttributeValue(int index) {
+        return document.getAttributeValue(node, index);
+    }
+
+    //null if the element has no such attribute
+    public String getAttributeValue(String name) {
+        return document.getAttributeValue(node, name);
+    }
+
+    public int getContentCount() {
+        return document.getContentCount(node);
+    }
+
+    public String getContent(int index) {
+        return document.getContent(node, index);
+    }
+}
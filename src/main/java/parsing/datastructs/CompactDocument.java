@@ -0,0 +1,443 @@
+package parsing.datastructs;
+
+import io.InputSource;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * The document tree as parallel primitive arrays instead of one {@link Element} (with its lists and map) per element.
+ * Elements are numbered in document order, the root being 0, and every per-element property is one int in an array:
+ * parent, next sibling, name (an index into a table that holds every distinct name once), and where its attributes
+ * and contents start; each range ends where the next element's starts. The first child needs no array, in document
+ * order it is the very next element if that one's parent is this one. Attribute values and contents are ranges of
+ * UTF-8 bytes, one array for each.
+ * <p>
+ * The tree is appended to in document order through {@link #startElement(String)}, {@link #addAttribute},
+ * {@link #addContent(String)} and {@link #endElement()}, then {@link #finish()}ed, and read through the node number
+ * accessors or a {@link CompactCursor}. Strings are only created for the values a reader asks for.
+ * </p>
+ * A document created over its {@link InputSource} doesn't copy values at all: attribute values and contents stay
+ * [start, end) ranges of the input, appended with {@link #addAttribute(String, int, int)} and
+ * {@link #addContent(int, int)}, and each is decoded the first time it is read and then cached. Parsing and heap then
+ * scale with what is actually read, at the cost of keeping the whole input around, which for a mapped file is off
+ * the heap anyway.
+ */
+public class CompactDocument implements NodeDocument {
+    private static final int INITIAL_CAPACITY = 64;
+
+    private final String encoding = "UTF-8";
+    private String version = "";
+    private boolean standalone = true;
+    private boolean finished = false;
+    //where values are, for a document that doesn't copy them. null if it does
+    private final InputSource source;
+
+    //one slot per element
+    private int nodeCount = 0;
+    private int[] parents = new int[INITIAL_CAPACITY];
+    private int[] nextSiblings = new int[INITIAL_CAPACITY];
+    private int[] nameIds = new int[INITIAL_CAPACITY];
+    private int[] attributeStarts = new int[INITIAL_CAPACITY];
+    //first content segment of each element. until finish, segments are in the order their elements ended
+    private int[] contentStarts = new int[INITIAL_CAPACITY];
+
+    private String[] names = new String[16];
+    private int nameCount = 0;
+
+    private int attributeCount = 0;
+    private int[] attributeNameIds = new int[INITIAL_CAPACITY];
+    private int[] attributeValueStarts = new int[INITIAL_CAPACITY];
+    //only for values that stay in the source, copied ones end where the next one starts
+    private int[] attributeValueEnds;
+    private byte[] values = new byte[1024];
+    private int valuesLength = 0;
+
+    private int segmentCount = 0;
+    private int[] segmentStarts = new int[INITIAL_CAPACITY];
+    private byte[] text = new byte[1024];
+    private int textLength = 0;
+    //values and contents of a document over its source, decoded as they are read
+    private String[] valueCache;
+    private String[] contentCache;
+
+    //only needed while the tree is appended to, dropped by finish
+    private HashMap<String, Integer> nameIndex = new HashMap<>();
+    private int[] contentEnds = new int[INITIAL_CAPACITY];
+    private int[] segmentEnds = new int[INITIAL_CAPACITY];
+    private int[] openNodes = new int[16];
+    private int[] openLastChildren = new int[16];
+    //a node's contents are interleaved with its children's, so they wait here until it ends and then are filed
+    // together. openPendingFrom[d] is where the pending segments of the open node at depth d begin
+    private int[] openPendingFrom = new int[16];
+    private int openCount = 0;
+    private int[] pendingStarts = new int[16];
+    private int[] pendingEnds = new int[16];
+    private int pendingCount = 0;
+
+    public CompactDocument() {
+        this.source = null;
+    }
+
+    //values stay in source, which must hold the whole input for as long as the document is used
+    public CompactDocument(InputSource source) {
+        this.source = source;
+        this.attributeValueEnds = new int[INITIAL_CAPACITY];
+        this.valueCache = new String[0];
+        this.values = null;
+        this.text = null;
+    }
+
+    /**
+     * Appends an element as the last child of the element that is open, or as the root, and opens it. Returns its
+     * node number.
+     */
+    public int startElement(String name) {
+        requireAppendable();
+        if (openCount == 0 && nodeCount > 0)
+            throw new IllegalStateException("A document has only one root");
+
+        if (nodeCount == parents.length) {
+            int capacity = nodeCount * 2;
+            parents = Arrays.copyOf(parents, capacity);
+            nextSiblings = Arrays.copyOf(nextSiblings, capacity);
+            nameIds = Arrays.copyOf(nameIds, capacity);
+            attributeStarts = Arrays.copyOf(attributeStarts, capacity);
+            contentStarts = Arrays.copyOf(contentStarts, capacity);
+            contentEnds = Arrays.copyOf(contentEnds, capacity);
+        }
+
+        int node = nodeCount++;
+        parents[node] = openCount == 0 ? NONE : openNodes[openCount - 1];
+        nextSiblings[node] = NONE;
+        nameIds[node] = nameId(name);
+        attributeStarts[node] = attributeCount;
+        if (openCount > 0) {
+            int lastChild = openLastChildren[openCount - 1];
+            if (lastChild != NONE)
+                nextSiblings[lastChild] = node;
+            openLastChildren[openCount - 1] = node;
+        }
+
+        if (openCount == openNodes.length) {
+            openNodes = Arrays.copyOf(openNodes, openCount * 2);
+            openLastChildren = Arrays.copyOf(openLastChildren, openCount * 2);
+            openPendingFrom = Arrays.copyOf(openPendingFrom, openCount * 2);
+        }
+        openNodes[openCount] = node;
+        openLastChildren[openCount] = NONE;
+        openPendingFrom[openCount] = pendingCount;
+        ++openCount;
+        return node;
+    }
+
+    //belongs to the element started last, so must come before its contents and children
+    public void addAttribute(String name, String value) {
+        requireCopying();
+        int attribute = newAttribute(name);
+        attributeValueStarts[attribute] = valuesLength;
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        values = append(values, valuesLength, bytes);
+        valuesLength += bytes.length;
+    }
+
+    //same, for a document over its source: the value is the [start, end) bytes of the source
+    public void addAttribute(String name, int start, int end) {
+        requireOverSource();
+        int attribute = newAttribute(name);
+        attributeValueStarts[attribute] = start;
+        attributeValueEnds[attribute] = end;
+    }
+
+    private int newAttribute(String name) {
+        requireAppendable();
+        if (openCount == 0 || openNodes[openCount - 1] != nodeCount - 1)
+            throw new IllegalStateException("Attributes go right after their element is started");
+
+        if (attributeCount == attributeNameIds.length) {
+            attributeNameIds = Arrays.copyOf(attributeNameIds, attributeCount * 2);
+            attributeValueStarts = Arrays.copyOf(attributeValueStarts, attributeCount * 2);
+            if (attributeValueEnds != null)
+                attributeValueEnds = Arrays.copyOf(attributeValueEnds, attributeCount * 2);
+        }
+        attributeNameIds[attributeCount] = nameId(name);
+        return attributeCount++;
+    }
+
+    //a content of the element that is open
+    public void addContent(String content) {
+        requireCopying();
+        byte[] bytes = content.getBytes(StandardCharsets.UTF_8);
+        text = append(text, textLength, bytes);
+        textLength += bytes.length;
+        addPending(textLength - bytes.length, textLength);
+    }
+
+    //same, for a document over its source: the content is the [start, end) bytes of the source
+    public void addContent(int start, int end) {
+        requireOverSource();
+        addPending(start, end);
+    }
+
+    private void addPending(int start, int end) {
+        requireAppendable();
+        if (openCount == 0)
+            throw new IllegalStateException("Content outside of the root element");
+
+        if (pendingCount == pendingStarts.length) {
+            pendingStarts = Arrays.copyOf(pendingStarts, pendingCount * 2);
+            pendingEnds = Arrays.copyOf(pendingEnds, pendingCount * 2);
+        }
+        pendingStarts[pendingCount] = start;
+        pendingEnds[pendingCount] = end;
+        ++pendingCount;
+    }
+
+    //closes the element that is open, filing its contents
+    public void endElement() {
+        requireAppendable();
+        if (openCount == 0)
+            throw new IllegalStateException("No element is open");
+
+        int node = openNodes[--openCount];
+        int from = openPendingFrom[openCount];
+        int count = pendingCount - from;
+        if (segmentCount + count > segmentStarts.length) {
+            int capacity = Math.max(segmentStarts.length * 2, segmentCount + count);
+            segmentStarts = Arrays.copyOf(segmentStarts, capacity);
+            segmentEnds = Arrays.copyOf(segmentEnds, capacity);
+        }
+        System.arraycopy(pendingStarts, from, segmentStarts, segmentCount, count);
+        System.arraycopy(pendingEnds, from, segmentEnds, segmentCount, count);
+        contentStarts[node] = segmentCount;
+        segmentCount += count;
+        contentEnds[node] = segmentCount;
+        pendingCount = from;
+    }
+
+    /**
+     * Ends appending: lays the contents out in element order, so every range ends where the next one starts, shrinks
+     * every array to what the tree uses and drops what was only needed to build it. Contents can be read from then on.
+     * Contents that stay in the source keep their ends, only their ranges are reordered.
+     */
+    public void finish() {
+        requireAppendable();
+        if (openCount != 0)
+            throw new IllegalStateException(openCount + " elements are still open");
+
+        int[] orderedContentStarts = new int[nodeCount];
+        int[] orderedSegmentStarts = new int[segmentCount];
+        int[] orderedSegmentEnds = source != null ? new int[segmentCount] : null;
+        byte[] orderedText = source != null ? null : new byte[textLength];
+        int segment = 0;
+        int length = 0;
+        for (int node = 0; node < nodeCount; node++) {
+            orderedContentStarts[node] = segment;
+            for (int filed = contentStarts[node]; filed < contentEnds[node]; filed++) {
+                if (source != null) {
+                    orderedSegmentStarts[segment] = segmentStarts[filed];
+                    orderedSegmentEnds[segment++] = segmentEnds[filed];
+                    continue;
+                }
+                int segmentLength = segmentEnds[filed] - segmentStarts[filed];
+                System.arraycopy(text, segmentStarts[filed], orderedText, length, segmentLength);
+                orderedSegmentStarts[segment++] = length;
+                length += segmentLength;
+            }
+        }
+        contentStarts = orderedContentStarts;
+        segmentStarts = orderedSegmentStarts;
+        text = orderedText;
+        if (source != null)
+            attributeValueEnds = Arrays.copyOf(attributeValueEnds, attributeCount);
+        else
+            values = Arrays.copyOf(values, valuesLength);
+
+        parents = Arrays.copyOf(parents, nodeCount);
+        nextSiblings = Arrays.copyOf(nextSiblings, nodeCount);
+        nameIds = Arrays.copyOf(nameIds, nodeCount);
+        attributeStarts = Arrays.copyOf(attributeStarts, nodeCount);
+        names = Arrays.copyOf(names, nameCount);
+        attributeNameIds = Arrays.copyOf(attributeNameIds, attributeCount);
+        attributeValueStarts = Arrays.copyOf(attributeValueStarts, attributeCount);
+
+        nameIndex = null;
+        contentEnds = null;
+        segmentEnds = orderedSegmentEnds;
+        openNodes = null;
+        openLastChildren = null;
+        openPendingFrom = null;
+        pendingStarts = null;
+        pendingEnds = null;
+        finished = true;
+    }
+
+    private void requireAppendable() {
+        if (finished)
+            throw new IllegalStateException("The document has been finished");
+    }
+
+    private void requireCopying() {
+        if (source != null)
+            throw new IllegalStateException("Values of this document stay in its source, add them as ranges");
+    }
+
+    private void requireOverSource() {
+        if (source == null)
+            throw new IllegalStateException("This document copies its values, add them as Strings");
+    }
+
+    private int nameId(String name) {
+        Integer id = nameIndex.get(name);
+        if (id != null)
+            return id;
+
+        if (nameCount == names.length)
+            names = Arrays.copyOf(names, nameCount * 2);
+        names[nameCount] = name;
+        nameIndex.put(name, nameCount);
+        return nameCount++;
+    }
+
+    //the pool, grown if the bytes don't fit after its first length bytes
+    private static byte[] append(byte[] pool, int length, byte[] bytes) {
+        if (length + bytes.length > pool.length)
+            pool = Arrays.copyOf(pool, Math.max(pool.length * 2, length + bytes.length));
+        System.arraycopy(bytes, 0, pool, length, bytes.length);
+        return pool;
+    }
+
+    public String getEncoding() {
+        return encoding;
+    }
+
+    public boolean getStandalone() {
+        return standalone;
+    }
+
+    public void setStandalone(boolean standalone) {
+        this.standalone = standalone;
+    }
+
+    public String getVersion() {
+        return version;
+    }
+
+    public void setVersion(String version) {
+        this.version = version;
+    }
+
+    //NONE until the root has been started
+    public int getRoot() {
+        return nodeCount == 0 ? NONE : 0;
+    }
+
+    public int getNodeCount() {
+        return nodeCount;
+    }
+
+    public int getParent(int node) {
+        return parents[node];
+    }
+
+    public int getFirstChild(int node) {
+        return node + 1 < nodeCount && parents[node + 1] == node ? node + 1 : NONE;
+    }
+
+    public int getNextSibling(int node) {
+        return nextSiblings[node];
+    }
+
+    public String getTagName(int node) {
+        return names[nameIds[node]];
+    }
+
+    public int getNameId(int node) {
+        return nameIds[node];
+    }
+
+    public int getAttributeCount(int node) {
+        return attributeEnd(node) - attributeStarts[node];
+    }
+
+    public String getAttributeName(int node, int index) {
+        return names[attributeNameIds[attributeIndex(node, index)]];
+    }
+
+    public String getAttributeValue(int node, int index) {
+        return valueOf(attributeIndex(node, index));
+    }
+
+    //null if the node has no such attribute
+    public String getAttributeValue(int node, String name) {
+        for (int attribute = attributeStarts[node]; attribute < attributeEnd(node); attribute++) {
+            if (names[attributeNameIds[attribute]].equals(name))
+                return valueOf(attribute);
+        }
+        return null;
+    }
+
+    //contents are only laid out once the document is finished
+    public int getContentCount(int node) {
+        if (!finished)
+            throw new IllegalStateException("The document hasn't been finished");
+        return (node + 1 < nodeCount ? contentStarts[node + 1] : segmentCount) - contentStarts[node];
+    }
+
+    public String getContent(int node, int index) {
+        if (index < 0 || index >= getContentCount(node))
+            throw new IndexOutOfBoundsException("Content " + index + " of " + getContentCount(node));
+        int segment = contentStarts[node] + index;
+        if (source != null) {
+            if (contentCache == null)
+                contentCache = new String[segmentCount];
+            if (contentCache[segment] == null)
+                contentCache[segment] = source.decode(segmentStarts[segment], segmentEnds[segment]);
+            return contentCache[segment];
+        }
+
+        int end = segment + 1 < segmentCount ? segmentStarts[segment + 1] : textLength;
+        return new String(text, segmentStarts[segment], end - segmentStarts[segment], StandardCharsets.UTF_8);
+    }
+
+    private int attributeEnd(int node) {
+        return node + 1 < nodeCount ? attributeStarts[node + 1] : attributeCount;
+    }
+
+    private int attributeIndex(int node, int index) {
+        if (index < 0 || index >= getAttributeCount(node))
+            throw new IndexOutOfBoundsException("Attribute " + index + " of " + getAttributeCount(node));
+        return attributeStarts[node] + index;
+    }
+
+    private String valueOf(int attribute) {
+        if (source != null) {
+            //sized for the attributes so far, values can be read while the tree is still appended to
+            if (valueCache.length < attributeCount)
+                valueCache = Arrays.copyOf(valueCache, attributeCount);
+            if (valueCache[attribute] == null)
+                valueCache[attribute] = source.decode(attributeValueStarts[attribute], attributeValueEnds[attribute]);
+            return valueCache[attribute];
+        }
+
+        int end = attribute + 1 < attributeCount ? attributeValueStarts[attribute + 1] : valuesLength;
+        return new String(values, attributeValueStarts[attribute], end - attributeValueStarts[attribute],
+                StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Prints a node and its subtree the way {@link Element#printSelfAndChildren(String, PrintStream)} does.
+     */
+    public void printSelfAndChildren(int node, String initialFormat, PrintStream out) {
+        try {
+            new TreePrinter(out, initialFormat).print(this, node);
+        } catch (IOException e) {
+            //a PrintStream sets its error flag instead of throwing, this can't happen
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -1,13 +1,17 @@
 package parsing.datastructs;
 
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
 import java.util.ArrayList;
 import java.util.HashMap;
 
 public class Element {
-    private final ArrayList<Element> children = new ArrayList<>();
+    private final FreezableList<Element> children = new FreezableList<>();
     private final HashMap<String, String> attributeNameValues;
-    private final ArrayList<String> contents = new ArrayList<>();
+    private final FreezableList<String> contents = new FreezableList<>();
     private String tagName = null;
+    private boolean frozen = false;
 
     public Element() {
         attributeNameValues = new HashMap<>(16);
@@ -27,10 +31,12 @@ public class Element {
     }
 
     public void setAttributeValue(String attribute, String value) {
+        requireUnfrozen();
         attributeNameValues.replace(attribute, value);
     }
 
     public void addAttributeAndValue(String attribute, String value) {
+        requireUnfrozen();
         attributeNameValues.put(attribute, value);
     }
 
@@ -43,14 +49,47 @@ public class Element {
     }
 
     public void setTagName(String tagName) {
+        requireUnfrozen();
         this.tagName = tagName;
     }
 
+    /**
+     * Makes this element and every element under it read only, for sharing between threads: setters, and changes to
+     * the lists of children and contents, throw UnsupportedOperationException from then on. Frozen stays frozen.
+     */
+    public void freeze() {
+        ArrayList<Element> unfrozen = new ArrayList<>();
+        unfrozen.add(this);
+        while (!unfrozen.isEmpty()) {
+            Element element = unfrozen.remove(unfrozen.size() - 1);
+            if (element.frozen)
+                continue;
+            element.frozen = true;
+            element.children.freeze();
+            element.contents.freeze();
+            unfrozen.addAll(element.children);
+        }
+    }
+
+    public boolean isFrozen() {
+        return frozen;
+    }
+
+    private void requireUnfrozen() {
+        if (frozen)
+            throw new UnsupportedOperationException("The element is frozen");
+    }
+
     public HashMap<String, String> getAttributeNameValues() {
         //this should work, regardless of IDE warning
         return (HashMap<String, String>) attributeNameValues.clone();
     }
 
+    //the map itself, for the serializer, which only reads it
+    HashMap<String, String> attributeNameValues() {
+        return attributeNameValues;
+    }
+
     //.clone() would be a shallow copy, doesn't make alot of sense for reducing leaks, so just leak the obj
     // in this implementation. if this were a library we should obviously protect the class instance
     public ArrayList<Element> getChildren() {
@@ -58,14 +97,17 @@ public class Element {
     }
 
     public void printSelfAndChildren(String initialFormat) {
+        printSelfAndChildren(initialFormat, System.out);
+    }
+
+    //initialFormat is one level of indentation, see TreePrinter
+    public void printSelfAndChildren(String initialFormat, PrintStream out) {
         //TODO convert this to a prettier format with / \ etc. and not tabular.
-        System.out.println(initialFormat + tagName + " Attr: " + attributeNameValues.toString() + " {");
-        for (String content : contents) {
-            System.out.println(initialFormat + "Content: " + content);
-        }
-        for (Element child : children) {
-            child.printSelfAndChildren(initialFormat + initialFormat);
+        try {
+            new TreePrinter(out, initialFormat).print(this);
+        } catch (IOException e) {
+            //a PrintStream sets its error flag instead of throwing, this can't happen
+            throw new UncheckedIOException(e);
         }
-        System.out.println(initialFormat + "};");
     }
 }
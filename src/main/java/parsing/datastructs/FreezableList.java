@@ -0,0 +1,114 @@
+package parsing.datastructs;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.Predicate;
+import java.util.function.UnaryOperator;
+
+/**
+ * The lists an {@link Element} hands out, which stop accepting changes once it's frozen. Everything that changes an
+ * ArrayList, its iterators included, goes through one of the methods overridden here.
+ */
+final class FreezableList<E> extends ArrayList<E> {
+    private static final long serialVersionUID = 1L;
+
+    private boolean frozen = false;
+
+    void freeze() {
+        frozen = true;
+        trimToSize();
+    }
+
+    private void requireUnfrozen() {
+        if (frozen)
+            throw new UnsupportedOperationException("The element is frozen");
+    }
+
+    @Override
+    public boolean add(E e) {
+        requireUnfrozen();
+        return super.add(e);
+    }
+
+    @Override
+    public void add(int index, E element) {
+        requireUnfrozen();
+        super.add(index, element);
+    }
+
+    @Override
+    public boolean addAll(Collection<? extends E> c) {
+        requireUnfrozen();
+        return super.addAll(c);
+    }
+
+    @Override
+    public boolean addAll(int index, Collection<? extends E> c) {
+        requireUnfrozen();
+        return super.addAll(index, c);
+    }
+
+    @Override
+    public E set(int index, E element) {
+        requireUnfrozen();
+        return super.set(index, element);
+    }
+
+    @Override
+    public E remove(int index) {
+        requireUnfrozen();
+        return super.remove(index);
+    }
+
+    @Override
+    public boolean remove(Object o) {
+        requireUnfrozen();
+        return super.remove(o);
+    }
+
+    @Override
+    public boolean removeAll(Collection<?> c) {
+        requireUnfrozen();
+        return super.removeAll(c);
+    }
+
+    @Override
+    public boolean retainAll(Collection<?> c) {
+        requireUnfrozen();
+        return super.retainAll(c);
+    }
+
+    @Override
+    public boolean removeIf(Predicate<? super E> filter) {
+        requireUnfrozen();
+        return super.removeIf(filter);
+    }
+
+    @Override
+    public void replaceAll(UnaryOperator<E> operator) {
+        requireUnfrozen();
+        super.replaceAll(operator);
+    }
+
+    @Override
+    public void sort(Comparator<? super E> c) {
+        requireUnfrozen();
+        super.sort(c);
+    }
+
+    @Override
+    public void clear() {
+        requireUnfrozen();
+        super.clear();
+    }
+
+    //an ArrayList's sub lists write to its array directly
+    @Override
+    public List<E> subList(int fromIndex, int toIndex) {
+        return frozen ? Collections.unmodifiableList(super.subList(fromIndex, toIndex))
+                : super.subList(fromIndex, toIndex);
+    }
+}
@@ -0,0 +1,52 @@
+package parsing.datastructs;
+
+/**
+ * A document tree read through node numbers rather than objects. Elements are numbered in document order, the root
+ * being 0, so an element's first child, if it has one, is the very next node. {@link CompactDocument} keeps the tree
+ * in arrays on the heap and {@link BinaryDocument} reads it straight out of a file.
+ */
+public interface NodeDocument {
+    int NONE = -1;
+
+    String getEncoding();
+
+    String getVersion();
+
+    boolean getStandalone();
+
+    //NONE if the document has no root
+    int getRoot();
+
+    int getNodeCount();
+
+    int getParent(int node);
+
+    int getFirstChild(int node);
+
+    int getNextSibling(int node);
+
+    String getTagName(int node);
+
+    /**
+     * Index of the node's name in the document's name table. Two nodes have the same name exactly when these are
+     * equal.
+     */
+    int getNameId(int node);
+
+    int getAttributeCount(int node);
+
+    String getAttributeName(int node, int index);
+
+    String getAttributeValue(int node, int index);
+
+    //null if the node has no such attribute
+    String getAttributeValue(int node, String name);
+
+    int getContentCount(int node);
+
+    String getContent(int node, int index);
+
+    default CompactCursor cursor() {
+        return new CompactCursor(this);
+    }
+}
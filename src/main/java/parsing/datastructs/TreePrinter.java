@@ -0,0 +1,170 @@
+package parsing.datastructs;
+
+import java.io.Flushable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Prints a tree as one line per element, content and end of element, each line indented once more per level than
+ * its parent's. Lines are gathered in a buffer that is handed to the {@link Appendable} a few thousand chars at a
+ * time, and trees are walked without recursion, so printing is linear in the size of the output for any depth.
+ * <p>
+ * Nothing is left in the buffer once a print returns; a {@link Flushable} target is not flushed until
+ * {@link #flush()}.
+ * </p>
+ */
+public class TreePrinter implements Flushable {
+    private static final int BUFFER_SIZE = 8192;
+    private static final String LINE_SEPARATOR = System.lineSeparator();
+
+    private final Appendable out;
+    private final String indent;
+    //grows up to a little past BUFFER_SIZE, a small tree only takes what it needs
+    private final StringBuilder buffer = new StringBuilder();
+
+    //the elements being printed and the next child of each
+    private Element[] openElements = new Element[16];
+    private int[] nextChildren = new int[16];
+    //a numbered node's attributes, so they come out in the same order as an Element's
+    private HashMap<String, String> attributeNameValues = new HashMap<>(16);
+
+    public TreePrinter(Appendable out) {
+        this(out, "\t");
+    }
+
+    //the root is indented once, its children twice and so on
+    public TreePrinter(Appendable out, String indent) {
+        this.out = out;
+        this.indent = indent;
+    }
+
+    public void print(Element root) throws IOException {
+        startElement(root.getTagName(), root.attributeNameValues(), root.getContents(), 0);
+        int depth = 1;
+        openElements[0] = root;
+        nextChildren[0] = 0;
+        while (depth > 0) {
+            ArrayList<Element> children = openElements[depth - 1].getChildren();
+            int next = nextChildren[depth - 1]++;
+            if (next == children.size()) {
+                openElements[--depth] = null;
+                endElement(depth);
+                continue;
+            }
+
+            Element child = children.get(next);
+            startElement(child.getTagName(), child.attributeNameValues(), child.getContents(), depth);
+            if (depth == openElements.length) {
+                openElements = Arrays.copyOf(openElements, depth * 2);
+                nextChildren = Arrays.copyOf(nextChildren, depth * 2);
+            }
+            openElements[depth] = child;
+            nextChildren[depth++] = 0;
+        }
+        drain();
+    }
+
+    /**
+     * The node and its subtree, in the same layout as an {@link Element}. A {@link CompactDocument} has to be
+     * finished.
+     */
+    public void print(NodeDocument document, int root) throws IOException {
+        //nodes are numbered in document order and know their parent, so the walk needs no stack
+        int node = root;
+        int depth = 0;
+        while (true) {
+            startElement(document, node, depth);
+            int child = document.getFirstChild(node);
+            if (child != NodeDocument.NONE) {
+                node = child;
+                depth++;
+                continue;
+            }
+
+            endElement(depth);
+            while (node != root && document.getNextSibling(node) == NodeDocument.NONE) {
+                node = document.getParent(node);
+                endElement(--depth);
+            }
+            if (node == root)
+                break;
+            node = document.getNextSibling(node);
+        }
+        drain();
+    }
+
+    @Override
+    public void flush() throws IOException {
+        drain();
+        if (out instanceof Flushable)
+            ((Flushable) out).flush();
+    }
+
+    private void startElement(String tagName, Map<String, String> attributes, ArrayList<String> contents, int depth)
+            throws IOException {
+        indent(depth);
+        buffer.append(tagName).append(" Attr: ");
+        appendAttributes(attributes);
+        buffer.append(" {").append(LINE_SEPARATOR);
+        for (String content : contents) {
+            indent(depth);
+            buffer.append("Content: ").append(content).append(LINE_SEPARATOR);
+        }
+    }
+
+    private void startElement(NodeDocument document, int node, int depth) throws IOException {
+        //a map that grew past 12 keeps its bigger table when cleared, which would change the order
+        if (attributeNameValues.size() > 12)
+            attributeNameValues = new HashMap<>(16);
+        else
+            attributeNameValues.clear();
+        for (int i = 0; i < document.getAttributeCount(node); i++)
+            attributeNameValues.put(document.getAttributeName(node, i), document.getAttributeValue(node, i));
+
+        indent(depth);
+        buffer.append(document.getTagName(node)).append(" Attr: ");
+        appendAttributes(attributeNameValues);
+        buffer.append(" {").append(LINE_SEPARATOR);
+        for (int i = 0; i < document.getContentCount(node); i++) {
+            indent(depth);
+            buffer.append("Content: ").append(document.getContent(node, i)).append(LINE_SEPARATOR);
+        }
+    }
+
+    private void endElement(int depth) throws IOException {
+        indent(depth);
+        buffer.append("};").append(LINE_SEPARATOR);
+    }
+
+    //as AbstractMap.toString writes them, without the String
+    private void appendAttributes(Map<String, String> attributes) {
+        buffer.append('{');
+        Iterator<Map.Entry<String, String>> entries = attributes.entrySet().iterator();
+        while (entries.hasNext()) {
+            Map.Entry<String, String> entry = entries.next();
+            buffer.append(entry.getKey()).append('=').append(entry.getValue());
+            if (entries.hasNext())
+                buffer.append(", ");
+        }
+        buffer.append('}');
+    }
+
+    //starts a line at depth, handing the buffer over first if it's full
+    private void indent(int depth) throws IOException {
+        if (buffer.length() >= BUFFER_SIZE)
+            drain();
+        for (int i = 0; i <= depth; i++)
+            buffer.append(indent);
+    }
+
+    private void drain() throws IOException {
+        if (buffer.length() == 0)
+            return;
+        out.append(buffer);
+        buffer.setLength(0);
+    }
+}
@@ -1,10 +1,13 @@
 package parsing.datastructs;
 
+import java.util.ArrayList;
+
 public class XMLDocument {
     private final String encoding = "UTF-8";
     private String version = "";
     private boolean standalone = true;
     private Element root = new Element();
+    private boolean frozen = false;
 
     public XMLDocument() {
     }
@@ -18,6 +21,7 @@ public class XMLDocument {
     }
 
     public void setStandalone(Boolean standalone) {
+        requireUnfrozen();
         this.standalone = standalone;
     }
 
@@ -26,6 +30,7 @@ public class XMLDocument {
     }
 
     public void setRoot(Element root) {
+        requireUnfrozen();
         this.root = root;
     }
 
@@ -34,6 +39,57 @@ public class XMLDocument {
     }
 
     public void setVersion(String version) {
+        requireUnfrozen();
         this.version = version;
     }
+
+    //the document and its whole tree become read only, see Element.freeze
+    public void freeze() {
+        frozen = true;
+        root.freeze();
+    }
+
+    public boolean isFrozen() {
+        return frozen;
+    }
+
+    /**
+     * About how much heap the tree holds on to, counting each element with its lists and attribute map, and every
+     * attribute value and content as a String of its own. Names are interned and shared between documents, so they
+     * aren't counted. Meant for sizing caches, not for accounting.
+     */
+    public long estimateRetainedBytes() {
+        long bytes = 64;
+        ArrayList<Element> unvisited = new ArrayList<>();
+        if (root.getTagName() != null)
+            unvisited.add(root);
+        while (!unvisited.isEmpty()) {
+            Element element = unvisited.remove(unvisited.size() - 1);
+            //the element, its two lists and its map. empty lists share one array, an empty map has no table
+            bytes += 144 + arrayBytes(element.getChildren().size()) + arrayBytes(element.getContents().size());
+            if (!element.attributeNameValues().isEmpty())
+                bytes += 80;
+            for (String value : element.attributeNameValues().values())
+                bytes += 32 + stringBytes(value);
+            for (String content : element.getContents())
+                bytes += stringBytes(content);
+            unvisited.addAll(element.getChildren());
+        }
+        return bytes;
+    }
+
+    //a reference array trimmed to its length
+    private static long arrayBytes(int length) {
+        return length == 0 ? 0 : 16 + 4L * length;
+    }
+
+    //with compact strings, which is what most text is
+    private static long stringBytes(String string) {
+        return 40 + string.length();
+    }
+
+    private void requireUnfrozen() {
+        if (frozen)
+            throw new UnsupportedOperationException("The document is frozen");
+    }
 }
@@ -0,0 +1,295 @@
+package parsing.datastructs;
+
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * Writes {@link XMLDocument} and {@link Element} trees back out as XML, encoded to UTF-8 straight into one buffer
+ * that is reused for everything this serializer writes and handed to the stream or channel whenever it fills up; the
+ * output never exists as a String. Text is only escaped where it has to be: a value is scanned for the characters
+ * that can't appear in it as they are, and the runs between them are encoded unchanged.
+ * <p>
+ * An {@link Element} keeps its contents apart from its children, so they are written before the children, and
+ * several contents of one element are written one after another. Bytes sit in the buffer until it is full or
+ * {@link #flush()} is called.
+ * </p>
+ * Trees are walked with a stack on the heap, so any depth the parser accepted can be written back.
+ */
+public class XMLSerializer implements Flushable {
+    public static final int DEFAULT_BUFFER_SIZE = 8192;
+    //the most bytes one char, or a surrogate pair, encodes to
+    private static final int MAX_CHAR_BYTES = 4;
+
+    private final OutputStream out;
+    private final WritableByteChannel channel;
+    private final byte[] buffer;
+    //a view of the buffer, for writing it to the channel
+    private final ByteBuffer view;
+    private int position = 0;
+    //null if elements aren't pretty printed
+    private byte[] indent = null;
+    //the depth of the element with mixed content being written as it is, -1 if there is none
+    private int inlineDepth = -1;
+
+    //the elements being written and the next child of each
+    private Element[] openElements = new Element[16];
+    private int[] nextChildren = new int[16];
+
+    public XMLSerializer(OutputStream out) {
+        this(out, null, DEFAULT_BUFFER_SIZE);
+    }
+
+    public XMLSerializer(WritableByteChannel channel) {
+        this(null, channel, DEFAULT_BUFFER_SIZE);
+    }
+
+    private XMLSerializer(OutputStream out, WritableByteChannel channel, int bufferSize) {
+        this.out = out;
+        this.channel = channel;
+        this.buffer = new byte[Math.max(bufferSize, 64)];
+        this.view = channel == null ? null : ByteBuffer.wrap(buffer);
+    }
+
+    /**
+     * Pretty prints from now on: every element starts on a line of its own, indented by {@code indent} once per
+     * level. Only whitespace the parser drops again is added: an element with both contents and children would keep
+     * it as part of its text, so it is written as it is, with everything under it. null writes elements as they are,
+     * which is the default.
+     */
+    public void setIndent(String indent) {
+        this.indent = indent == null ? null : indent.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * The XML declaration followed by the root element and a line break. The declaration has no encoding, the parsers
+     * read nothing but UTF-8 and don't accept one.
+     */
+    public void write(XMLDocument document) throws IOException {
+        writeAscii("<?xml version=\"");
+        writeText(document.getVersion().isEmpty() ? "1.0" : document.getVersion(), '"');
+        writeAscii(document.getStandalone() ? "\" standalone=\"yes\"?>\n" : "\" standalone=\"no\"?>\n");
+
+        //a document that was never parsed into has a root without a name
+        if (document.getRoot() != null && document.getRoot().getTagName() != null) {
+            write(document.getRoot());
+            if (indent == null)
+                writeByte('\n');
+        }
+    }
+
+    /**
+     * The element and everything under it. Pretty printed, it ends with a line break.
+     */
+    public void write(Element root) throws IOException {
+        inlineDepth = -1;
+        if (!startElement(root, 0))
+            return;
+
+        int depth = 1;
+        openElements[0] = root;
+        nextChildren[0] = 0;
+        while (depth > 0) {
+            Element element = openElements[depth - 1];
+            ArrayList<Element> children = element.getChildren();
+            int next = nextChildren[depth - 1]++;
+            if (next == children.size()) {
+                openElements[--depth] = null;
+                if (indent != null && inlineDepth < 0)
+                    writeIndent(depth);
+                endTag(element, depth);
+                continue;
+            }
+
+            Element child = children.get(next);
+            if (startElement(child, depth)) {
+                if (depth == openElements.length) {
+                    openElements = Arrays.copyOf(openElements, depth * 2);
+                    nextChildren = Arrays.copyOf(nextChildren, depth * 2);
+                }
+                openElements[depth] = child;
+                nextChildren[depth++] = 0;
+            }
+        }
+    }
+
+    /**
+     * Hands whatever is buffered to the stream or channel, and flushes the stream.
+     */
+    @Override
+    public void flush() throws IOException {
+        drain();
+        if (out != null)
+            out.flush();
+    }
+
+    //the start tag and contents, true if the children and end tag are still to come
+    private boolean startElement(Element element, int depth) throws IOException {
+        boolean pretty = indent != null && inlineDepth < 0;
+        if (pretty)
+            writeIndent(depth);
+        writeByte('<');
+        writeText(element.getTagName(), 0);
+        for (Map.Entry<String, String> attribute : element.attributeNameValues().entrySet()) {
+            writeByte(' ');
+            writeText(attribute.getKey(), 0);
+            //a value with double quotes and no single ones is single quoted, so it needs no escaping
+            String value = attribute.getValue();
+            char quote = value.indexOf('"') >= 0 && value.indexOf('\'') < 0 ? '\'' : '"';
+            writeByte('=');
+            writeByte(quote);
+            writeText(value, quote);
+            writeByte(quote);
+        }
+
+        ArrayList<String> contents = element.getContents();
+        boolean hasChildren = !element.getChildren().isEmpty();
+        if (contents.isEmpty() && !hasChildren) {
+            writeAscii("/>");
+            if (pretty)
+                writeByte('\n');
+            return false;
+        }
+
+        writeByte('>');
+        if (pretty && hasChildren) {
+            if (contents.isEmpty())
+                writeByte('\n');
+            else
+                inlineDepth = depth;
+        }
+        for (String content : contents)
+            writeText(content, 0);
+
+        if (hasChildren)
+            return true;
+        endTag(element, depth);
+        return false;
+    }
+
+    private void endTag(Element element, int depth) throws IOException {
+        writeAscii("</");
+        writeText(element.getTagName(), 0);
+        writeByte('>');
+        if (inlineDepth == depth)
+            inlineDepth = -1;
+        if (indent != null && inlineDepth < 0)
+            writeByte('\n');
+    }
+
+    private void writeIndent(int depth) throws IOException {
+        for (int i = 0; i < depth; i++) {
+            if (buffer.length - position < indent.length) {
+                drain();
+                //an indent longer than the whole buffer goes out on its own
+                if (buffer.length < indent.length) {
+                    writeDirect(indent);
+                    continue;
+                }
+            }
+            System.arraycopy(indent, 0, buffer, position, indent.length);
+            position += indent.length;
+        }
+    }
+
+    /**
+     * Text or an attribute value quoted with {@code quote} (0 for text), escaped. '<' and '&' are always escaped, the
+     * quote inside its own quotes, and '>' only where it would close a "]]>".
+     */
+    private void writeText(String text, int quote) throws IOException {
+        int length = text.length();
+        int from = 0;
+        for (int i = 0; i < length; i++) {
+            char c = text.charAt(i);
+            String reference;
+            if (c == '<')
+                reference = "&lt;";
+            else if (c == '&')
+                reference = "&amp;";
+            else if (c == quote)
+                reference = c == '"' ? "&quot;" : "&apos;";
+            else if (c == '>' && i >= 2 && text.charAt(i - 1) == ']' && text.charAt(i - 2) == ']')
+                reference = "&gt;";
+            else
+                continue;
+
+            writeUtf8(text, from, i);
+            writeAscii(reference);
+            from = i + 1;
+        }
+        writeUtf8(text, from, length);
+    }
+
+    //the chars in [from, to) of text, escaped already
+    private void writeUtf8(String text, int from, int to) throws IOException {
+        for (int i = from; i < to; i++) {
+            if (buffer.length - position < MAX_CHAR_BYTES)
+                drain();
+
+            char c = text.charAt(i);
+            if (c < 0x80) {
+                buffer[position++] = (byte) c;
+            } else if (c < 0x800) {
+                buffer[position++] = (byte) (0xC0 | (c >> 6));
+                buffer[position++] = (byte) (0x80 | (c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && i + 1 < to && Character.isLowSurrogate(text.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, text.charAt(++i));
+                buffer[position++] = (byte) (0xF0 | (codePoint >> 18));
+                buffer[position++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+                buffer[position++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+                buffer[position++] = (byte) (0x80 | (codePoint & 0x3F));
+            } else {
+                //a lone surrogate has no UTF-8 form
+                int codePoint = Character.isSurrogate(c) ? 0xFFFD : c;
+                buffer[position++] = (byte) (0xE0 | (codePoint >> 12));
+                buffer[position++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+                buffer[position++] = (byte) (0x80 | (codePoint & 0x3F));
+            }
+        }
+    }
+
+    //markup and references, which are ASCII
+    private void writeAscii(String ascii) throws IOException {
+        if (buffer.length - position < ascii.length())
+            drain();
+        for (int i = 0; i < ascii.length(); i++)
+            buffer[position++] = (byte) ascii.charAt(i);
+    }
+
+    private void writeByte(int b) throws IOException {
+        if (position == buffer.length)
+            drain();
+        buffer[position++] = (byte) b;
+    }
+
+    private void drain() throws IOException {
+        if (position == 0)
+            return;
+
+        if (out != null) {
+            out.write(buffer, 0, position);
+        } else {
+            view.clear();
+            view.limit(position);
+            while (view.hasRemaining())
+                channel.write(view);
+        }
+        position = 0;
+    }
+
+    private void writeDirect(byte[] bytes) throws IOException {
+        if (out != null)
+            out.write(bytes);
+        else {
+            ByteBuffer wrapped = ByteBuffer.wrap(bytes);
+            while (wrapped.hasRemaining())
+                channel.write(wrapped);
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package parsing.events;
+
+import io.InputSource;
+
+import java.util.Arrays;
+
+/**
+ * The {@link Attributes} parsers fill in. One instance is kept per parser and cleared for every element, so reading
+ * attributes allocates nothing past the strings themselves. Values added as spans are only decoded when asked for.
+ */
+public final class AttributeList implements Attributes {
+    private String[] names = new String[8];
+    private String[] values = new String[8];
+    //-1 for values that were added as Strings
+    private int[] valueStarts = new int[8];
+    private int[] valueEnds = new int[8];
+    private InputSource source;
+    private int length = 0;
+
+    public void clear() {
+        Arrays.fill(names, 0, length, null);
+        Arrays.fill(values, 0, length, null);
+        source = null;
+        length = 0;
+    }
+
+    public void add(String name, String value) {
+        int index = slotOf(name);
+        values[index] = value;
+        valueStarts[index] = -1;
+        valueEnds[index] = -1;
+    }
+
+    //the value is the [start, end) bytes of source, decoded on first use
+    public void add(String name, InputSource source, int start, int end) {
+        int index = slotOf(name);
+        this.source = source;
+        values[index] = null;
+        valueStarts[index] = start;
+        valueEnds[index] = end;
+    }
+
+    //the index of name, added if it isn't there yet
+    private int slotOf(String name) {
+        int index = indexOf(name);
+        if (index != -1)
+            return index;
+
+        if (length == names.length) {
+            names = Arrays.copyOf(names, length * 2);
+            values = Arrays.copyOf(values, length * 2);
+            valueStarts = Arrays.copyOf(valueStarts, length * 2);
+            valueEnds = Arrays.copyOf(valueEnds, length * 2);
+        }
+        names[length] = name;
+        return length++;
+    }
+
+    @Override
+    public int getLength() {
+        return length;
+    }
+
+    @Override
+    public String getName(int index) {
+        checkIndex(index);
+        return names[index];
+    }
+
+    @Override
+    public String getValue(int index) {
+        checkIndex(index);
+        return valueOf(index);
+    }
+
+    @Override
+    public String getValue(String name) {
+        int index = indexOf(name);
+        return index == -1 ? null : valueOf(index);
+    }
+
+    @Override
+    public int getValueStart(int index) {
+        checkIndex(index);
+        return valueStarts[index];
+    }
+
+    @Override
+    public int getValueEnd(int index) {
+        checkIndex(index);
+        return valueEnds[index];
+    }
+
+    private String valueOf(int index) {
+        if (values[index] == null)
+            values[index] = source.decode(valueStarts[index], valueEnds[index]);
+        return values[index];
+    }
+
+    //elements have a handful of attributes, a linear scan beats hashing them
+    private int indexOf(String name) {
+        for (int i = 0; i < length; i++) {
+            if (names[i].equals(name))
+                return i;
+        }
+        return -1;
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= length)
+            throw new IndexOutOfBoundsException("Attribute " + index + " of " + length);
+    }
+}
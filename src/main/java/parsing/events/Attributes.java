@@ -0,0 +1,25 @@
+package parsing.events;
+
+/**
+ * Read only view of the attributes of the element being started, in document order. A repeated attribute name
+ * keeps the last value, same as the tree does.
+ */
+public interface Attributes {
+
+    int getLength();
+
+    String getName(int index);
+
+    String getValue(int index);
+
+    //null if there is no such attribute
+    String getValue(String name);
+
+    /**
+     * Where the value is in the input, for a {@link SpanHandler} that keeps it without decoding it. -1 if the parser
+     * passed the value as a String.
+     */
+    int getValueStart(int index);
+
+    int getValueEnd(int index);
+}
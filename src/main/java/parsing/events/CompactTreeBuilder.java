@@ -0,0 +1,49 @@
+package parsing.events;
+
+import parsing.datastructs.CompactDocument;
+
+/**
+ * Builds a {@link CompactDocument} out of the parser's events, for when the tree is kept around and its footprint
+ * matters more than having {@link parsing.datastructs.Element} objects.
+ */
+public class CompactTreeBuilder implements XMLHandler {
+    private CompactDocument document;
+
+    @Override
+    public void startDocument() {
+        document = new CompactDocument();
+    }
+
+    @Override
+    public void xmlDeclaration(String version, boolean standalone) {
+        document.setVersion(version);
+        document.setStandalone(standalone);
+    }
+
+    @Override
+    public void startElement(String name, Attributes attributes) {
+        document.startElement(name);
+        for (int i = 0; i < attributes.getLength(); i++)
+            document.addAttribute(attributes.getName(i), attributes.getValue(i));
+    }
+
+    @Override
+    public void characters(String text) {
+        document.addContent(text);
+    }
+
+    @Override
+    public void endElement(String name) {
+        document.endElement();
+    }
+
+    @Override
+    public void endDocument() {
+        document.finish();
+    }
+
+    //the document of the last parse, complete once endDocument has been called
+    public CompactDocument getDocument() {
+        return document;
+    }
+}
@@ -0,0 +1,62 @@
+package parsing.events;
+
+import io.InputSource;
+import parsing.datastructs.CompactDocument;
+
+/**
+ * Builds a {@link CompactDocument} over the parser's input: names are interned as usual, but attribute values and
+ * contents are only recorded as where they are, and decoded by the document the first time they are read. For jobs
+ * that keep a tree but read a fraction of its fields.
+ */
+public class LazyTreeBuilder implements SpanHandler {
+    private CompactDocument document;
+
+    @Override
+    public void startDocument(InputSource source) {
+        document = new CompactDocument(source);
+    }
+
+    //the document needs the source, which only a span aware parser passes
+    @Override
+    public void startDocument() {
+        throw new UnsupportedOperationException("LazyTreeBuilder needs the input, see SpanHandler");
+    }
+
+    @Override
+    public void xmlDeclaration(String version, boolean standalone) {
+        document.setVersion(version);
+        document.setStandalone(standalone);
+    }
+
+    @Override
+    public void startElement(String name, Attributes attributes) {
+        document.startElement(name);
+        for (int i = 0; i < attributes.getLength(); i++)
+            document.addAttribute(attributes.getName(i), attributes.getValueStart(i), attributes.getValueEnd(i));
+    }
+
+    @Override
+    public void characters(int start, int end) {
+        document.addContent(start, end);
+    }
+
+    @Override
+    public void characters(String text) {
+        throw new UnsupportedOperationException("LazyTreeBuilder takes text as spans, see SpanHandler");
+    }
+
+    @Override
+    public void endElement(String name) {
+        document.endElement();
+    }
+
+    @Override
+    public void endDocument() {
+        document.finish();
+    }
+
+    //the document of the last parse, complete once endDocument has been called
+    public CompactDocument getDocument() {
+        return document;
+    }
+}
@@ -0,0 +1,100 @@
+package parsing.events;
+
+import parsing.datastructs.Element;
+
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+/**
+ * Builds one record at a time instead of the whole tree. A record is an element with a given name, or any element at
+ * a given depth (the root is at depth 1); each one is built as a full {@link Element} subtree, handed to the consumer
+ * once its end tag has been read, and then forgotten. Everything outside of records is skipped, so memory is bounded
+ * by the largest record rather than by the document.
+ * <p>
+ * A record nested in another record is just part of the outer one.
+ * </p>
+ */
+public class RecordStreamer implements XMLHandler {
+    private final String recordName;
+    private final int recordDepth;
+    private final Consumer<Element> consumer;
+    private int depth = 0;
+    //the record being built and its open descendants, empty outside of records
+    private Element[] openElements = new Element[16];
+    private int openCount = 0;
+    private long recordCount = 0;
+
+    public RecordStreamer(String recordName, Consumer<Element> consumer) {
+        this.recordName = recordName;
+        this.recordDepth = -1;
+        this.consumer = consumer;
+    }
+
+    public RecordStreamer(int recordDepth, Consumer<Element> consumer) {
+        if (recordDepth < 1)
+            throw new IllegalArgumentException("recordDepth must be at least 1, got " + recordDepth);
+        this.recordName = null;
+        this.recordDepth = recordDepth;
+        this.consumer = consumer;
+    }
+
+    @Override
+    public void startDocument() {
+        depth = 0;
+        Arrays.fill(openElements, 0, openCount, null);
+        openCount = 0;
+        recordCount = 0;
+    }
+
+    @Override
+    public void xmlDeclaration(String version, boolean standalone) {
+    }
+
+    @Override
+    public void startElement(String name, Attributes attributes) {
+        ++depth;
+        if (openCount == 0 && !isRecord(name))
+            return;
+
+        Element elem = TreeBuilder.newElement(name, attributes);
+        if (openCount > 0)
+            openElements[openCount - 1].insertChild(elem);
+
+        if (openCount == openElements.length)
+            openElements = Arrays.copyOf(openElements, openCount * 2);
+        openElements[openCount++] = elem;
+    }
+
+    @Override
+    public void characters(String text) {
+        if (openCount > 0)
+            openElements[openCount - 1].addContent(text);
+    }
+
+    @Override
+    public void endElement(String name) {
+        --depth;
+        if (openCount == 0)
+            return;
+
+        Element elem = openElements[--openCount];
+        openElements[openCount] = null;
+        if (openCount == 0) {
+            ++recordCount;
+            consumer.accept(elem);
+        }
+    }
+
+    @Override
+    public void endDocument() {
+    }
+
+    //records handed to the consumer by the last parse
+    public long getRecordCount() {
+        return recordCount;
+    }
+
+    private boolean isRecord(String name) {
+        return recordName != null ? recordName.equals(name) : depth == recordDepth;
+    }
+}
@@ -0,0 +1,21 @@
+package parsing.events;
+
+import io.InputSource;
+
+/**
+ * An {@link XMLHandler} that takes text as where it is in the input instead of as Strings, for handlers that keep
+ * text without reading most of it. The parsers then decode nothing but names: CharData runs come as byte spans, and
+ * attribute values as spans too (see {@link Attributes#getValueStart(int)}), decoded only if a value is asked for.
+ * <p>
+ * The spans point into the source given to {@link #startDocument(InputSource)}, so they stay valid only as long as
+ * that source holds the whole input; a streaming source that discards what has been read doesn't.
+ * </p>
+ */
+public interface SpanHandler extends XMLHandler {
+
+    //called instead of startDocument()
+    void startDocument(InputSource source);
+
+    //called instead of characters(String), with the same run as [start, end) bytes of the source
+    void characters(int start, int end);
+}
@@ -0,0 +1,70 @@
+package parsing.events;
+
+import parsing.datastructs.Element;
+import parsing.datastructs.XMLDocument;
+
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * Builds the {@link XMLDocument} tree out of the parser's events, which is what the parsers used to do themselves.
+ */
+public class TreeBuilder implements XMLHandler {
+    private XMLDocument xmlDocument;
+    private Element[] openElements = new Element[16];
+    private int openCount = 0;
+
+    @Override
+    public void startDocument() {
+        xmlDocument = new XMLDocument();
+        Arrays.fill(openElements, 0, openCount, null);
+        openCount = 0;
+    }
+
+    @Override
+    public void xmlDeclaration(String version, boolean standalone) {
+        xmlDocument.setVersion(version);
+        xmlDocument.setStandalone(standalone);
+    }
+
+    @Override
+    public void startElement(String name, Attributes attributes) {
+        Element elem = newElement(name, attributes);
+        if (openCount == 0)
+            xmlDocument.setRoot(elem);
+        else
+            openElements[openCount - 1].insertChild(elem);
+
+        if (openCount == openElements.length)
+            openElements = Arrays.copyOf(openElements, openCount * 2);
+        openElements[openCount++] = elem;
+    }
+
+    @Override
+    public void characters(String text) {
+        openElements[openCount - 1].addContent(text);
+    }
+
+    @Override
+    public void endElement(String name) {
+        openElements[--openCount] = null;
+    }
+
+    @Override
+    public void endDocument() {
+    }
+
+    //the attributes are copied, the parser reuses its list
+    static Element newElement(String name, Attributes attributes) {
+        HashMap<String, String> attributeNameValues = new HashMap<>(16);
+        for (int i = 0; i < attributes.getLength(); i++)
+            attributeNameValues.put(attributes.getName(i), attributes.getValue(i));
+
+        return new Element(name, attributeNameValues);
+    }
+
+    //the document of the last parse, complete once endDocument has been called
+    public XMLDocument getDocument() {
+        return xmlDocument;
+    }
+}
@@ -0,0 +1,26 @@
+package parsing.events;
+
+/**
+ * Receives the document as the parser reads it, instead of as a tree once it's done. Events are only delivered for
+ * input the parser has committed to, so a handler never sees anything that gets backtracked over; if the document
+ * turns out to be ill-formed, the parse stops with an exception after the events for everything before the error.
+ */
+public interface XMLHandler {
+
+    void startDocument();
+
+    //only called if the document has an XMLDecl
+    void xmlDeclaration(String version, boolean standalone);
+
+    /**
+     * The attributes are only valid for the duration of the call, the parser reuses them for the next element.
+     */
+    void startElement(String name, Attributes attributes);
+
+    //a CharData run, with the whitespace before it dropped
+    void characters(String text);
+
+    void endElement(String name);
+
+    void endDocument();
+}
@@ -1,6 +1,9 @@
 package parsing.exceptions;
 
 public class IllFormedXMLException extends Exception {
+    private int line = -1;
+    private int column = -1;
+    private String expected = null;
 
     public IllFormedXMLException() {
     }
@@ -8,4 +11,24 @@ public class IllFormedXMLException extends Exception {
     public IllFormedXMLException(String unexpected_eof) {
         super(unexpected_eof);
     }
+
+    public IllFormedXMLException(int line, int column, String expected, String found) {
+        super("Line " + line + " Column " + column + ": expected " + expected + ", got " + found);
+        this.line = line;
+        this.column = column;
+        this.expected = expected;
+    }
+
+    //-1 if the location is unknown
+    public int getLine() {
+        return line;
+    }
+
+    public int getColumn() {
+        return column;
+    }
+
+    public String getExpected() {
+        return expected;
+    }
 }
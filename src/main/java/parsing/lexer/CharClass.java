@@ -0,0 +1,151 @@
+package parsing.lexer;
+
+/**
+ * Lexical character classes, looked up instead of matched with regular expressions. ASCII code points are classified
+ * with a single lookup into a bitmask table; everything above is classified through range tables, with the
+ * NameStartChar/NameChar sets taken from the XML 1.0 spec (see spec.txt).
+ */
+public final class CharClass {
+    //Letter  ::= [a-zA-Z]
+    public static final int LETTER = 1;
+    //Digit  ::= [0-9]
+    public static final int DIGIT = 1 << 1;
+    //S  ::=  (' ' | '\t' | '\r' | '\n')+
+    public static final int WHITESPACE = 1 << 2;
+    public static final int NAME_START = 1 << 3;
+    public static final int NAME = 1 << 4;
+    //Char  ::= '\t' | '\n' | '\r' | [a-zA-Z0-9]
+    public static final int CHAR_RANGE = 1 << 5;
+    //[^<&']
+    public static final int ATTVAL_SQ = 1 << 6;
+    //[^<&"]
+    public static final int ATTVAL_DQ = 1 << 7;
+    //[^<&]
+    public static final int CHARDATA = 1 << 8;
+
+    //every class a code point above ASCII can belong to, apart from the name classes
+    private static final int NON_ASCII = ATTVAL_SQ | ATTVAL_DQ | CHARDATA;
+
+    private static final short[] ASCII = new short[0x80];
+
+    //NameStartChar, in inclusive [from, to] pairs, sorted
+    private static final int[] NAME_START_RANGES = {
+            0xC0, 0xD6,
+            0xD8, 0xF6,
+            0xF8, 0x2FF,
+            0x370, 0x37D,
+            0x37F, 0x1FFF,
+            0x200C, 0x200D,
+            0x2070, 0x218F,
+            0x2C00, 0x2FEF,
+            0x3001, 0xD7FF,
+            0xF900, 0xFDCF,
+            0xFDF0, 0xFFFD,
+            0x10000, 0xEFFFF
+    };
+
+    //NameChar on top of NameStartChar, same layout
+    private static final int[] NAME_EXTRA_RANGES = {
+            0xB7, 0xB7,
+            0x300, 0x36F,
+            0x203F, 0x2040
+    };
+
+    static {
+        for (int c = 0; c < ASCII.length; c++) {
+            int bits = 0;
+            if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z'))
+                bits |= LETTER | NAME_START | NAME | CHAR_RANGE;
+            if (c >= '0' && c <= '9')
+                bits |= DIGIT | NAME | CHAR_RANGE;
+            if (c == '_' || c == ':')
+                bits |= NAME_START | NAME;
+            if (c == '.' || c == '-')
+                bits |= NAME;
+            if (c == ' ' || c == '\t' || c == '\r' || c == '\n')
+                bits |= WHITESPACE;
+            if (c == '\t' || c == '\r' || c == '\n')
+                bits |= CHAR_RANGE;
+            if (c != '<' && c != '&') {
+                bits |= CHARDATA;
+                if (c != '\'')
+                    bits |= ATTVAL_SQ;
+                if (c != '"')
+                    bits |= ATTVAL_DQ;
+            }
+            ASCII[c] = (short) bits;
+        }
+    }
+
+    private CharClass() {
+    }
+
+    /**
+     * Returns the class bits of a code point; EOF (or any negative value) belongs to no class.
+     */
+    public static int of(int codePoint) {
+        if (codePoint < 0)
+            return 0;
+        if (codePoint < 0x80)
+            return ASCII[codePoint];
+
+        int bits = NON_ASCII;
+        if (inRanges(NAME_START_RANGES, codePoint))
+            bits |= NAME_START | NAME;
+        else if (inRanges(NAME_EXTRA_RANGES, codePoint))
+            bits |= NAME;
+        return bits;
+    }
+
+    public static boolean is(int codePoint, int mask) {
+        if (codePoint >= 0 && codePoint < 0x80)
+            return (ASCII[codePoint] & mask) != 0;
+        return (of(codePoint) & mask) != 0;
+    }
+
+    /**
+     * True if {@code s} is non-empty and every code point in it belongs to one of the classes in {@code mask}, which
+     * is what matching the old [..]+ patterns amounted to.
+     */
+    public static boolean matchesAll(String s, int mask) {
+        int length = s.length();
+        if (length == 0)
+            return false;
+
+        for (int i = 0; i < length; ) {
+            int codePoint = s.codePointAt(i);
+            if (!is(codePoint, mask))
+                return false;
+            i += Character.charCount(codePoint);
+        }
+        return true;
+    }
+
+    public static boolean isWhitespace(int codePoint) {
+        return is(codePoint, WHITESPACE);
+    }
+
+    public static boolean isNameStartChar(int codePoint) {
+        return is(codePoint, NAME_START);
+    }
+
+    public static boolean isNameChar(int codePoint) {
+        return is(codePoint, NAME);
+    }
+
+    private static boolean inRanges(int[] ranges, int codePoint) {
+        //binary search over the pairs
+        int low = 0;
+        int high = ranges.length / 2 - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (codePoint < ranges[mid * 2])
+                high = mid - 1;
+            else if (codePoint > ranges[mid * 2 + 1])
+                low = mid + 1;
+            else
+                return true;
+        }
+        return false;
+    }
+}
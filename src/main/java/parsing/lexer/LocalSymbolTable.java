@@ -0,0 +1,82 @@
+package parsing.lexer;
+
+import io.InputSource;
+
+import java.util.Arrays;
+
+/**
+ * Symbol table for a single parser, an open addressing hash table over parallel arrays with no synchronization. It
+ * survives {@link Tokenizer#reset(InputSource)}, so a reused parser keeps the names of the documents before.
+ */
+public class LocalSymbolTable extends SymbolTable {
+    public static final int DEFAULT_MAX_SYMBOLS = 4096;
+
+    private final int maxSymbols;
+    private int[] hashes = new int[64];
+    private byte[][] keys = new byte[64][];
+    private String[] symbols = new String[64];
+    private int size = 0;
+
+    public LocalSymbolTable() {
+        this(DEFAULT_MAX_SYMBOLS);
+    }
+
+    public LocalSymbolTable(int maxSymbols) {
+        this.maxSymbols = maxSymbols;
+    }
+
+    @Override
+    public String intern(InputSource source, int start, int end) {
+        int hash = hash(source, start, end);
+        int mask = symbols.length - 1;
+        int slot = hash & mask;
+        while (symbols[slot] != null) {
+            if (hashes[slot] == hash && matches(keys[slot], source, start, end))
+                return symbols[slot];
+            slot = (slot + 1) & mask;
+        }
+
+        String symbol = source.decode(start, end);
+        if (size == maxSymbols)
+            return symbol;
+
+        hashes[slot] = hash;
+        keys[slot] = copy(source, start, end);
+        symbols[slot] = symbol;
+        //kept at most half full, so probes stay short
+        if (++size * 2 > symbols.length)
+            grow();
+        return symbol;
+    }
+
+    private void grow() {
+        int[] oldHashes = hashes;
+        byte[][] oldKeys = keys;
+        String[] oldSymbols = symbols;
+        hashes = new int[oldSymbols.length * 2];
+        keys = new byte[oldSymbols.length * 2][];
+        symbols = new String[oldSymbols.length * 2];
+
+        int mask = symbols.length - 1;
+        for (int i = 0; i < oldSymbols.length; i++) {
+            if (oldSymbols[i] == null)
+                continue;
+            int slot = oldHashes[i] & mask;
+            while (symbols[slot] != null)
+                slot = (slot + 1) & mask;
+            hashes[slot] = oldHashes[i];
+            keys[slot] = oldKeys[i];
+            symbols[slot] = oldSymbols[i];
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public void clear() {
+        Arrays.fill(keys, null);
+        Arrays.fill(symbols, null);
+        size = 0;
+    }
+}
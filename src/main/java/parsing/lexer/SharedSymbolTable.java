@@ -0,0 +1,85 @@
+package parsing.lexer;
+
+import io.InputSource;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Symbol table shared by parsers on different threads, so that the trees they build share their names too. Buckets
+ * are chains of immutable entries and new names are pushed with a compare-and-set, so lookups take no lock and never
+ * allocate. Two threads adding the same name at once both succeed; the entry that lands first wins, and the other
+ * thread looks again and returns that one.
+ */
+public class SharedSymbolTable extends SymbolTable {
+    public static final int DEFAULT_BUCKETS = 1024;
+
+    private final AtomicReferenceArray<Entry> buckets;
+    private final AtomicInteger size = new AtomicInteger();
+    private final int maxSymbols;
+
+    public SharedSymbolTable() {
+        this(DEFAULT_BUCKETS, LocalSymbolTable.DEFAULT_MAX_SYMBOLS);
+    }
+
+    //buckets is rounded up to a power of two
+    public SharedSymbolTable(int buckets, int maxSymbols) {
+        this.buckets = new AtomicReferenceArray<>(Integer.highestOneBit(Math.max(buckets, 1) * 2 - 1));
+        this.maxSymbols = maxSymbols;
+    }
+
+    @Override
+    public String intern(InputSource source, int start, int end) {
+        int hash = hash(source, start, end);
+        int bucket = hash & (buckets.length() - 1);
+
+        Entry head = buckets.get(bucket);
+        Entry found = find(head, hash, source, start, end);
+        if (found != null)
+            return found.symbol;
+
+        String symbol = source.decode(start, end);
+        if (size.get() >= maxSymbols)
+            return symbol;
+
+        byte[] key = copy(source, start, end);
+        while (true) {
+            Entry entry = new Entry(hash, key, symbol, head);
+            if (buckets.compareAndSet(bucket, head, entry)) {
+                size.incrementAndGet();
+                return symbol;
+            }
+            //somebody else added to this bucket, maybe this very name
+            head = buckets.get(bucket);
+            found = find(head, hash, source, start, end);
+            if (found != null)
+                return found.symbol;
+        }
+    }
+
+    private static Entry find(Entry entry, int hash, InputSource source, int start, int end) {
+        for (; entry != null; entry = entry.next) {
+            if (entry.hash == hash && matches(entry.key, source, start, end))
+                return entry;
+        }
+        return null;
+    }
+
+    public int size() {
+        return size.get();
+    }
+
+    private static final class Entry {
+        private final int hash;
+        private final byte[] key;
+        private final String symbol;
+        private final Entry next;
+
+        private Entry(int hash, byte[] key, String symbol, Entry next) {
+            this.hash = hash;
+            this.key = key;
+            this.symbol = symbol;
+            this.next = next;
+        }
+    }
+}
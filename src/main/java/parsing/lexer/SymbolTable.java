@@ -0,0 +1,42 @@
+package parsing.lexer;
+
+import io.InputSource;
+
+/**
+ * Canonical Strings for the names in a document. A name is hashed and compared straight from the input bytes, so
+ * every occurrence of {@code book} after the first costs a lookup and no String; all of them get the same instance,
+ * which can then be compared by identity. Past its maximum size a table stops adding names and decodes new ones as
+ * they come, so a document full of distinct names can't grow it without bound.
+ */
+public abstract class SymbolTable {
+
+    /**
+     * The canonical String for the UTF-8 bytes in [start, end) of the source.
+     */
+    public abstract String intern(InputSource source, int start, int end);
+
+    //FNV-1a over the bytes of the span
+    static int hash(InputSource source, int start, int end) {
+        int hash = 0x811C9DC5;
+        for (int i = start; i < end; i++)
+            hash = (hash ^ source.byteAt(i)) * 0x01000193;
+        return hash;
+    }
+
+    static boolean matches(byte[] bytes, InputSource source, int start, int end) {
+        if (bytes.length != end - start)
+            return false;
+        for (int i = 0; i < bytes.length; i++) {
+            if ((bytes[i] & 0xFF) != source.byteAt(start + i))
+                return false;
+        }
+        return true;
+    }
+
+    static byte[] copy(InputSource source, int start, int end) {
+        byte[] bytes = new byte[end - start];
+        for (int i = 0; i < bytes.length; i++)
+            bytes[i] = (byte) source.byteAt(start + i);
+        return bytes;
+    }
+}
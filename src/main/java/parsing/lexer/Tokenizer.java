@@ -1,324 +1,604 @@
 package parsing.lexer;
 
-import io.FilePushbackReader;
-import org.jetbrains.annotations.NotNull;
+import io.InputSource;
+import io.Utf8;
+import parsing.MarkStack;
 import parsing.Markable;
 
 import java.io.IOException;
-import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Iterator;
-import java.util.function.Consumer;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 import static parsing.XMLToken.*;
 
-public class Tokenizer implements Iterator<String>, Markable {
-    private static final Pattern digitPattern = Pattern.compile(R_TOKEN_DIGIT);
-    private static final Pattern letterPattern = Pattern.compile(R_TOKEN_LETTER);
-    private static final Pattern charRangePattern = Pattern.compile(R_TOKEN_CHARRANGE);
-    private static final Pattern attValSQPattern = Pattern.compile(R_TOKEN_ATTVAL_SQ);
-    private static final Pattern attValDQPattern = Pattern.compile(R_TOKEN_ATTVAL_DQ);
-    private static final Pattern charDataPattern = Pattern.compile(R_TOKEN_CHARDATA);
-    public static boolean _DEBUG = false;
-    private static String nextTok = ""; //these are safe to leak (yay for immutability!)
-    private final FilePushbackReader fpr;
-    private final StringBuilder sb = new StringBuilder();
-
-    private final ArrayList<String> tokenBuffer = new ArrayList<>();
-    private final ArrayList<Integer> marks = new ArrayList<>();
-
+/**
+ * Produces maximal munch tokens as an int kind (one of the KIND_ constants in {@link parsing.XMLToken}) plus a [start, end) byte
+ * span into the input. No String is created while lexing; callers materialize the spans they actually keep through
+ * {@link #getTokenText()} or {@link #getText(int, int)}, names through {@link #getName(int, int)} so that they come
+ * out of a {@link SymbolTable}.
+ * <p>
+ * Names, numbers, whitespace and character data are each lexed as a single run. Since a character data run can't be
+ * told apart from a name without context, the lexer keeps a small mode (content, inside a tag, inside a quoted
+ * literal, inside a comment) that is switched by the delimiters it has already produced.
+ * </p>
+ */
+public class Tokenizer implements Markable {
+    private static final int INITIAL_BUFFER_SIZE = 1024;
+    //the lexer mode only depends on the tokens lexed so far, so buffered tokens stay valid across rewinds
+    private static final int MODE_CONTENT = 0;
+    private static final int MODE_TAG = 1;
+    private static final int MODE_DOUBLE_QUOTED = 2;
+    private static final int MODE_SINGLE_QUOTED = 3;
+    private static final int MODE_COMMENT = 4;
+    private InputSource source;
+    private boolean debug = false;
+    private int nextKind = KIND_ERROR;
+    private SymbolTable symbols = new LocalSymbolTable();
+    //null unless values are to be deduped
+    private ValueCache values = null;
+
+    //token window, one slot per token in parallel primitive arrays. Slot 0 holds the token with absolute index
+    // windowStart; tokens before the oldest mark (and before the current token) are dropped when the window fills up,
+    // so memory is bounded by how far the parser can rewind rather than by the size of the document
+    private int[] kinds = new int[INITIAL_BUFFER_SIZE];
+    private int[] starts = new int[INITIAL_BUFFER_SIZE];
+    private int[] ends = new int[INITIAL_BUFFER_SIZE];
+    private int[] lines = new int[INITIAL_BUFFER_SIZE];
+    private int[] columns = new int[INITIAL_BUFFER_SIZE];
+    private int windowStart = 0;
+    private int tokenCount = 0;
+    private int windowHighWaterMark = 0;
+    private final MarkStack marks = new MarkStack();
+    //a byte the parser still needs even though the token it came from has left the window, -1 when there is none
+    private int pinned = -1;
+
+    private int mode = MODE_CONTENT;
+    private int position = 0;
     private int line = 1;
     private int column = 0;
     private int tokIndex = 0;
 
-    public Tokenizer(FilePushbackReader f) {
-        fpr = f;
+    public Tokenizer(InputSource source) {
+        this.source = source;
+    }
+
+    /**
+     * Starts over on a new input. The token window and the mark stack keep their capacity, so a tokenizer that is
+     * reused for many small documents stops allocating once it has seen the largest of them.
+     */
+    public void reset(InputSource source) {
+        this.source = source;
+        nextKind = KIND_ERROR;
+        windowStart = 0;
+        tokenCount = 0;
+        windowHighWaterMark = 0;
+        marks.clear();
+        pinned = -1;
+        mode = MODE_CONTENT;
+        position = 0;
+        line = 1;
+        column = 0;
+        tokIndex = 0;
     }
 
     public static boolean isDigit(String s) {
-        Matcher digitMatcher = digitPattern.matcher(s);
-        return digitMatcher.matches();
+        return CharClass.matchesAll(s, CharClass.DIGIT);
     }
 
     public static boolean isLetter(String s) {
-        Matcher letterMatcher = letterPattern.matcher(s);
-        return letterMatcher.matches();
+        return CharClass.matchesAll(s, CharClass.LETTER);
     }
 
     public static boolean isInCharRange(String s) {
-        Matcher charRangeMatcher = charRangePattern.matcher(s);
-        return charRangeMatcher.matches();
+        return CharClass.matchesAll(s, CharClass.CHAR_RANGE);
     }
 
     public static boolean isInAttValSQRange(String s) {
-        Matcher attValSQMatcher = attValSQPattern.matcher(s);
-        return attValSQMatcher.matches();
+        return CharClass.matchesAll(s, CharClass.ATTVAL_SQ);
     }
 
     public static boolean isInAttValDQRange(String s) {
-        Matcher attValDQMatcher = attValDQPattern.matcher(s);
-        return attValDQMatcher.matches();
+        return CharClass.matchesAll(s, CharClass.ATTVAL_DQ);
     }
 
     public static boolean isInCharDataRange(String s) {
-        Matcher charDataMatcher = charDataPattern.matcher(s);
-        return charDataMatcher.matches();
+        return CharClass.matchesAll(s, CharClass.CHARDATA);
     }
 
-    @Override
     public boolean hasNext() {
-        return !nextTok.equals(TOKEN_EOF);
+        return nextKind != KIND_EOF;
     }
 
-    @Override
-    public String next() {
-        //get next character
-        sb.setLength(0);
-
-        nextTok = LEXER_ERROR; //return lexer error as default if nothing matches
-
-        if (tokIndex < tokenBuffer.size()) {
-            return tokenBuffer.get(tokIndex++);
+    /**
+     * Moves to the next token and returns its kind. The span of that token is available through
+     * {@link #getTokenStart()} and {@link #getTokenEnd()} until the next call.
+     */
+    public int next() {
+        //replaying after a rewind, the kind has to be current for hasNext() all the same
+        if (tokIndex < tokenCount) {
+            nextKind = kinds[tokIndex++ - windowStart];
+            return nextKind;
         }
 
-        advance(sb);
+        int start = position;
+        int startLine = line;
+        int startColumn = column;
+        int b = source.byteAt(position);
 
-        if (sb.toString().equals(TOKEN_EOF)) {
-            nextTok = TOKEN_EOF;
+        if (b == InputSource.EOF) {
+            nextKind = KIND_EOF;
             try {
-                fpr.close();
+                source.close();
             } catch (IOException e) {
                 System.err.println("IOException when closing file");
             }
 
-            return nextTok;
+            addToken(KIND_EOF, start, start, startLine, startColumn);
+            return nextKind;
         }
 
-        switch (sb.toString()) {
-            case TOKEN_MINUS:
-            case TOKEN_SINGLE_QUOTE:
-            case TOKEN_DOUBLE_QUOTE:
-            case TOKEN_PARENTHESES_LEFT:
-            case TOKEN_PARENTHESES_RIGHT:
-            case TOKEN_PLUS:
-            case TOKEN_COMMA:
-            case TOKEN_COLON:
-            case TOKEN_EQUALS:
-            case TOKEN_SEMICOLON:
-            case TOKEN_EXCLAMATION:
-            case TOKEN_ASTERISK:
-            case TOKEN_HASHTAG:
-            case TOKEN_AT_SIGN:
-            case TOKEN_DOLLAR:
-            case TOKEN_UNDERSCORE:
-            case TOKEN_PERCENT:
-            case TOKEN_CARET:
-            case TOKEN_BIGGER_THAN:
-            case TOKEN_WHITESPACE:
-            case TOKEN_TAB:
-            case TOKEN_CARRIAGE_RETURN:
-            case TOKEN_DOT:
-                nextTok = sb.toString();
+        switch (mode) {
+            case MODE_CONTENT:
+                nextKind = lexContent(b);
                 break;
-            case TOKEN_SLASH:
-                nextTok = TOKEN_SLASH;
-                {
-                    String peekChar = peek();
-                    // '/>'
-                    if (">".equals(peekChar)) {
-                        nextTok = TOKEN_EMPTY_TAG_END;
-                        sb.append("/>");
-                        eat();
-                    }
-                }
-            break;
-            case TOKEN_QUESTION_MARK:
-                nextTok = TOKEN_QUESTION_MARK;
-                {
-                    //?>
-                    String peekChar = peek();
-                    if (">".equals(peekChar)) {
-                        nextTok = TOKEN_XML_DECL_END;
-                        sb.append(">");
-                        eat();
-                    }
-                }
-            break;
-            case TOKEN_LINEFEED:
-                nextTok = TOKEN_LINEFEED;
-                ++line;
-                column = 0;
+            case MODE_TAG:
+                nextKind = lexTag(b);
                 break;
-            case TOKEN_SMALLER_THAN:
-                nextTok = TOKEN_SMALLER_THAN;
-
-                {
-                    String peekChar = peek();
-                    String peekString;
-                    switch (peekChar) {
-                        // </
-                        case "/":
-                            nextTok = TOKEN_END_TAG_START;
-                            sb.append("/");
-                            eat();
-                            break;
-                        // <?
-                        case "?":
-                            peekString = multiPeek(4);
-                            // ?xml
-                            if (peekString.equals("?xml")) {
-                                nextTok = TOKEN_XML_DECL_START;
-                                sb.append("?xml");
-                                eat(4);
-                            }
-                            break;
-                        // <!
-                        case "!":
-                            peekString = multiPeek(3);
-                            // <!--
-                            if (peekString.equals("!--")) {
-                                eat(3);
-                                sb.setLength(sb.length() - 1); // pop stringbuilder
-                                //TODO eatComment();
-                                //TODO After calling eatcomment, and we've skipped the comment,
-                                // we should probably call next() again, so we get a valid token to return.
-                                // this way, we'll be avoiding using <-- as a SKIP token...
-                                // interestingly enough, we can skip nested comments, if we call
-                                // this method again if we spot a <!--
-                                // however, nested comments are prohibited by the standard if IIRC
-                            }
-                            break;
-                    }
-                }
+            case MODE_COMMENT:
+                nextKind = lexComment(b);
                 break;
             default:
-                String peek;
-                peek = multiPeek(6);
-                if (sb.toString().equals("v") && peek.equals("ersion")) {
-                    eat(6);
-                    nextTok = TOKEN_VERSION_KEYWORD;
-                    break;
+                nextKind = lexLiteral(b);
+                break;
+        }
+
+        if (nextKind == KIND_ERROR && debug)
+            error(line, column, String.format("Lexer found unknown token %s stacktrace\n%s",
+                    source.decode(start, position), getCurrentStackTrace()));
+
+        addToken(nextKind, start, position, startLine, startColumn);
+
+        return nextKind;
+    }
+
+    //content  ::=  CharData? (element CharData?)*, which is also what surrounds the root element
+    private int lexContent(int b) {
+        if (b == '<')
+            return lexMarkupStart();
+
+        if (CharClass.isWhitespace(b)) {
+            eatWhitespace();
+            return KIND_WHITESPACE;
+        }
+
+        // references are not supported, '&' is left to the parser to reject or accept
+        if (b == '&') {
+            eat();
+            return KIND_ERROR;
+        }
+
+        //CharData is everything up to the next markup, leading whitespace has already been split off above
+        eatCharData(CharClass.CHARDATA);
+        return KIND_CHARDATA;
+    }
+
+    //everything between '<' and '>'
+    private int lexTag(int b) {
+        if (CharClass.isWhitespace(b)) {
+            eatWhitespace();
+            return KIND_WHITESPACE;
+        }
+
+        int codePoint = b < 0x80 ? b : Utf8.decode(source, position);
+
+        //invalid UTF-8 is never part of a name, nor of anything else in a tag. a malformed sequence in the middle of
+        // a name ends it in the loop below and comes back here as the next token
+        if (codePoint == Utf8.MALFORMED) {
+            eatCodePoint(b);
+            return KIND_ERROR;
+        }
+
+        if (CharClass.isNameStartChar(codePoint)) {
+            do {
+                eatCodePoint(b);
+                b = source.byteAt(position);
+                codePoint = b < 0x80 ? b : Utf8.decode(source, position);
+            } while (CharClass.isNameChar(codePoint));
+            return KIND_NAME;
+        }
+
+        if (CharClass.is(b, CharClass.DIGIT)) {
+            do {
+                eat();
+                b = source.byteAt(position);
+            } while (CharClass.is(b, CharClass.DIGIT));
+            return KIND_NUMBER;
+        }
+
+        //non ASCII outside of a literal that isn't part of a name
+        if (b >= 0x80) {
+            eatCodePoint(b);
+            return KIND_ERROR;
+        }
+
+        switch (b) {
+            case '<':
+                return lexMarkupStart();
+            case '"':
+                mode = MODE_DOUBLE_QUOTED;
+                break;
+            case '\'':
+                mode = MODE_SINGLE_QUOTED;
+                break;
+            case '>':
+                mode = MODE_CONTENT;
+                break;
+            case '/':
+                // '/>'
+                if (source.byteAt(position + 1) == '>') {
+                    eat(2);
+                    mode = MODE_CONTENT;
+                    return KIND_EMPTY_TAG_END;
                 }
-                peek = multiPeek(2);
-                if (sb.toString().equals("1") && peek.equals(".0")) {
+                break;
+            case '?':
+                //?>
+                if (source.byteAt(position + 1) == '>') {
                     eat(2);
-                    nextTok = TOKEN_VERSION_1_0;
-                    break;
+                    mode = MODE_CONTENT;
+                    return KIND_XML_DECL_END;
                 }
+                break;
+        }
 
-                peek = multiPeek(9);
-                if (sb.toString().equals("s") && peek.equals("tandalone")) {
-                    eat(9);
-                    nextTok = TOKEN_STANDALONE_KEYWORD;
-                    break;
-                }
+        eat();
+        return punctuationKind(b);
+    }
 
-                peek = multiPeek(2);
-                if (sb.toString().equals("y") && peek.equals("es")) {
-                    eat(2);
-                    nextTok = TOKEN_YES_KEYWORD;
-                    break;
-                }
+    //AttValue and the quoted values of the XML declaration
+    private int lexLiteral(int b) {
+        int quote = mode == MODE_DOUBLE_QUOTED ? '"' : '\'';
 
-                peek = peek();
-                if (sb.toString().equals("n") && peek.equals("o")) {
-                    eat();
-                    nextTok = TOKEN_NO_KEYWORD;
-                    break;
-                }
+        if (b == quote) {
+            eat();
+            mode = MODE_TAG;
+            return quote == '"' ? KIND_DOUBLE_QUOTE : KIND_SINGLE_QUOTE;
+        }
 
-                // letter
-                if (isLetter(sb.toString())) {
-                    nextTok = sb.toString();
-                    break;
-                }
+        if (b == '<') {
+            eat();
+            return KIND_SMALLER_THAN;
+        }
 
-                //digit
-                if (isDigit(sb.toString())) {
-                    nextTok = sb.toString();
-                    break;
-                }
+        if (b == '&') {
+            eat();
+            return KIND_ERROR;
+        }
 
+        eatCharData(quote == '"' ? CharClass.ATTVAL_DQ : CharClass.ATTVAL_SQ);
+        return KIND_CHARDATA;
+    }
+
+    //'<' has not been consumed yet
+    private int lexMarkupStart() {
+        mode = MODE_TAG;
+        switch (source.byteAt(position + 1)) {
+            // </
+            case '/':
+                eat(2);
+                return KIND_END_TAG_START;
+            // <?
+            case '?':
+                // ?xml
+                if (source.regionMatches(position + 1, "?xml")) {
+                    eat(5);
+                    return KIND_XML_DECL_START;
+                }
+                break;
+            // <!
+            case '!':
+                // <!--, a token of its own so that no rule mistakes it for text
+                if (source.regionMatches(position + 1, "!--")) {
+                    eat(4);
+                    mode = MODE_COMMENT;
+                    return KIND_COMMENT_START;
+                }
                 break;
         }
+        eat();
+        return KIND_SMALLER_THAN;
+    }
 
-        if (nextTok.equals(LEXER_ERROR))
-            error(line, column, String.format("Lexer found unknown token %s stacktrace\n%s",
-                    sb.toString(), getCurrentStackTrace()));
+    //Comment  ::=  '<!--' ((Char - '-') | ('-' (Char - '-')))* '-->', the body is a single run up to the next "--"
+    private int lexComment(int b) {
+        if (b == '-' && source.byteAt(position + 1) == '-') {
+            if (source.byteAt(position + 2) == '>') {
+                eat(3);
+                mode = MODE_CONTENT;
+                return KIND_COMMENT_END;
+            }
+            //"--" is only allowed as part of the closing "-->"
+            eat(2);
+            mode = MODE_CONTENT;
+            return KIND_ERROR;
+        }
 
-        tokenBuffer.add(nextTok);
-        ++tokIndex;
+        while (b != InputSource.EOF && !(b == '-' && source.byteAt(position + 1) == '-')) {
+            if (b == '\n') {
+                ++line;
+                column = 0;
+                ++position;
+            } else {
+                eatCodePoint(b);
+            }
+            b = source.byteAt(position);
+        }
+        return KIND_CHARDATA;
+    }
 
-        return nextTok;
+    private int punctuationKind(int b) {
+        switch (b) {
+            case '-':
+                return KIND_MINUS;
+            case '\'':
+                return KIND_SINGLE_QUOTE;
+            case '"':
+                return KIND_DOUBLE_QUOTE;
+            case '(':
+                return KIND_PARENTHESES_LEFT;
+            case ')':
+                return KIND_PARENTHESES_RIGHT;
+            case '+':
+                return KIND_PLUS;
+            case ',':
+                return KIND_COMMA;
+            case ':':
+                return KIND_COLON;
+            case '=':
+                return KIND_EQUALS;
+            case ';':
+                return KIND_SEMICOLON;
+            case '!':
+                return KIND_EXCLAMATION;
+            case '*':
+                return KIND_ASTERISK;
+            case '#':
+                return KIND_HASHTAG;
+            case '@':
+                return KIND_AT_SIGN;
+            case '$':
+                return KIND_DOLLAR;
+            case '_':
+                return KIND_UNDERSCORE;
+            case '%':
+                return KIND_PERCENT;
+            case '^':
+                return KIND_CARET;
+            case '>':
+                return KIND_BIGGER_THAN;
+            case '.':
+                return KIND_DOT;
+            case '/':
+                return KIND_SLASH;
+            case '?':
+                return KIND_QUESTION_MARK;
+            default:
+                return KIND_ERROR;
+        }
     }
 
-    private String multiPeek(int n) {
-        try {
-            return fpr.peekChars(n);
-        } catch (IOException e) {
-            error(line, column, e.getMessage());
-            System.exit(-1);
+    private void eatWhitespace() {
+        int b = source.byteAt(position);
+        while (CharClass.isWhitespace(b)) {
+            if (b == '\n') {
+                ++line;
+                column = 0;
+            } else {
+                ++column;
+            }
+            ++position;
+            b = source.byteAt(position);
         }
-        return "";
     }
 
-    private String peek() {
-        try {
-            return fpr.peekChar() + "";
-        } catch (IOException e) {
-            error(line, column, e.getMessage());
-            System.exit(-1);
+    //[^<&]* and, inside a literal, not the closing quote either. bytes of multi-byte sequences are never markup
+    private void eatCharData(int charClass) {
+        int b = source.byteAt(position);
+        while (b >= 0x80 || CharClass.is(b, charClass)) {
+            if (b == '\n') {
+                ++line;
+                column = 0;
+                ++position;
+            } else {
+                eatCodePoint(b);
+            }
+            b = source.byteAt(position);
         }
+    }
 
-        return "";
+    //ASCII fast path, the multi-byte decoder is only needed when the high bit is set
+    private void eatCodePoint(int b) {
+        if (b < 0x80)
+            ++position;
+        else
+            position += Utf8.sequenceLength(source, position);
+        ++column;
     }
 
-    private void eat() {
-        try {
-            fpr.eat();
-            ++column;
-        } catch (IOException e) {
-            error(line, column, e.getMessage());
-            System.exit(-1);
+    private void addToken(int kind, int start, int end, int startLine, int startColumn) {
+        if (tokenCount - windowStart == kinds.length)
+            slideWindow();
+
+        int slot = tokenCount - windowStart;
+        kinds[slot] = kind;
+        starts[slot] = start;
+        ends[slot] = end;
+        lines[slot] = startLine;
+        columns[slot] = startColumn;
+        ++tokenCount;
+        ++tokIndex;
+
+        if (tokenCount - windowStart > windowHighWaterMark)
+            windowHighWaterMark = tokenCount - windowStart;
+    }
+
+    private void slideWindow() {
+        int keepFrom = tokIndex - 1; //the current token's span is still queried after next()
+        if (!marks.isEmpty())
+            keepFrom = Math.min(keepFrom, marks.bottom());
+        keepFrom = Math.max(keepFrom, windowStart);
+
+        int retained = tokenCount - keepFrom;
+        if (keepFrom > windowStart) {
+            int dropped = keepFrom - windowStart;
+            System.arraycopy(kinds, dropped, kinds, 0, retained);
+            System.arraycopy(starts, dropped, starts, 0, retained);
+            System.arraycopy(ends, dropped, ends, 0, retained);
+            System.arraycopy(lines, dropped, lines, 0, retained);
+            System.arraycopy(columns, dropped, columns, 0, retained);
+            windowStart = keepFrom;
+        }
+        //the input before the oldest retained token (or pin) is never looked at again
+        source.discardBefore(pinned == -1 ? starts[0] : Math.min(starts[0], pinned));
+
+        //still full, the marks really need every token in the window
+        if (retained == kinds.length) {
+            int newSize = kinds.length * 2;
+            kinds = Arrays.copyOf(kinds, newSize);
+            starts = Arrays.copyOf(starts, newSize);
+            ends = Arrays.copyOf(ends, newSize);
+            lines = Arrays.copyOf(lines, newSize);
+            columns = Arrays.copyOf(columns, newSize);
         }
     }
 
+    //only ever used to skip ASCII that has already been peeked, so bytes and columns move together
+    private void eat() {
+        ++position;
+        ++column;
+    }
+
     private void eat(int n) {
-        try {
-            fpr.eat(n);
-            column += n;
-        } catch (IOException e) {
-            error(line, column, e.getMessage());
-            System.exit(-1);
+        position += n;
+        column += n;
+    }
+
+    /**
+     * Byte offset where the current token starts.
+     */
+    public int getTokenStart() {
+        return starts[tokIndex - 1 - windowStart];
+    }
+
+    /**
+     * Byte offset right after the current token.
+     */
+    public int getTokenEnd() {
+        return ends[tokIndex - 1 - windowStart];
+    }
+
+    /**
+     * Line the current token starts on. Unlike {@link #getLine()}, this follows the parser when it rewinds.
+     */
+    public int getTokenLine() {
+        return lines[tokIndex - 1 - windowStart];
+    }
+
+    /**
+     * 1-based column the current token starts at, on {@link #getTokenLine()}.
+     */
+    public int getTokenColumn() {
+        return columns[tokIndex - 1 - windowStart] + 1;
+    }
+
+    /**
+     * Materializes the current token. Only meant for tokens that end up in the resulting tree or in messages.
+     */
+    public String getTokenText() {
+        return getText(getTokenStart(), getTokenEnd());
+    }
+
+    /**
+     * Compares the current token in place against {@code expected}, e.g. for keywords or the name of the element an
+     * end tag has to close.
+     */
+    public boolean tokenEquals(String expected) {
+        return textEquals(getTokenStart(), getTokenEnd(), expected);
+    }
+
+    /**
+     * Compares a [start, end) span of the input against {@code expected} without materializing the span. Only a
+     * non-ASCII {@code expected} costs a decode.
+     */
+    public boolean textEquals(int start, int end, String expected) {
+        int length = expected.length();
+        for (int i = 0; i < length; i++) {
+            if (expected.charAt(i) >= 0x80)
+                return getText(start, end).equals(expected);
         }
+        return end - start == length && source.regionMatches(start, expected);
     }
 
-    private void advance(@NotNull StringBuilder builder) {
-        try {
-            builder.append(fpr.readChar());
-            ++column;
-        } catch (IOException e) {
-            error(line, column, e.getMessage());
-            builder.append(TOKEN_EOF);
+    /**
+     * Compares two spans of the input byte by byte, e.g. an end tag name against its start tag name.
+     */
+    public boolean textEquals(int start, int end, int otherStart, int otherEnd) {
+        if (end - start != otherEnd - otherStart)
+            return false;
+        for (int i = 0; i < end - start; i++) {
+            if (source.byteAt(start + i) != source.byteAt(otherStart + i))
+                return false;
         }
+        return true;
     }
 
-    @Override
-    public void remove() {
-        //skip current tok
-        next();
+    /**
+     * Materializes an arbitrary [start, end) span of the input, e.g. a run of consecutive tokens.
+     */
+    public String getText(int start, int end) {
+        return source.decode(start, end);
+    }
+
+    /**
+     * Materializes a name through the symbol table, so every occurrence of a name is the same String instance.
+     */
+    public String getName(int start, int end) {
+        return symbols.intern(source, start, end);
+    }
+
+    //an attribute value or text run, deduped if there is a value cache
+    public String getValue(int start, int end) {
+        return values == null ? source.decode(start, end) : values.get(source, start, end);
+    }
+
+    //shared tables let several tokenizers, on any threads, hand out the same instances
+    public void setSymbolTable(SymbolTable symbols) {
+        this.symbols = symbols;
+    }
+
+    public void setValueCache(ValueCache values) {
+        this.values = values;
+    }
+
+    //a raw byte of the input, InputSource.EOF past its end
+    public int byteAt(int position) {
+        return source.byteAt(position);
+    }
+
+    /**
+     * Keeps the input from {@code position} on readable while tokens are read past it, for a span that runs over
+     * several tokens (a text run, a literal) or is used after them. Only one position is pinned at a time.
+     */
+    public void pin(int position) {
+        pinned = position;
+    }
+
+    public void unpin() {
+        pinned = -1;
     }
 
     @Override
     public void mark() {
-        //autoboxing typically has strong performance issues with autoboxing
-        // explicitly using .valueOf() might reduce this in specific instances; however I'm not sure in this specific
-        // example if it does. However, since it'd happen automatically, there's no real reason to avoid it, considering
-        // we might do hundreds of marks in huge parse files
-        // https://www.theserverside.com/blog/Coffee-Talk-Java-News-Stories-and-Opinions/Performance-cost-of-Java-autoboxing-and-unboxing-of-primitive-types
-        marks.add(Integer.valueOf(tokIndex));
+        marks.push(tokIndex);
     }
 
     @Override
@@ -328,29 +608,39 @@ public class Tokenizer implements Iterator<String>, Markable {
 
     @Override
     public void consumeMark() {
-        tokIndex = marks.remove(marks.size() - 1);
+        tokIndex = marks.pop();
     }
 
     @Override
     public void unmark() {
-        marks.remove(marks.size() - 1);
+        marks.pop();
     }
 
-    @Override
-    public void forEachRemaining(Consumer<? super String> action) {
-        while (hasNext()) {
-            String tok = next();
-            action.accept(tok);
-            //action.andThen() //maybe implement this, no real reason honestly, idk
-        }
+    public int getMarkDepth() {
+        return marks.depth();
     }
 
-    public void eatComment() {
+    /**
+     * How many tokens have been consumed, counting from the start of the input. Goes back when a mark is consumed.
+     */
+    public int getTokenIndex() {
+        return tokIndex;
+    }
 
+    public void setDebug(boolean debug) {
+        this.debug = debug;
+    }
+
+    /**
+     * The largest number of tokens the window has had to retain at once. This is what parsing actually costs in
+     * token memory, as opposed to the number of tokens in the document.
+     */
+    public int getWindowHighWaterMark() {
+        return windowHighWaterMark;
     }
 
     private void error(int line, int column, String message) {
-        if (_DEBUG)
+        if (debug)
             System.err.println("Tokenizer Line: " + line + " Column: " + column + "\n" + message);
     }
 
@@ -363,7 +653,11 @@ public class Tokenizer implements Iterator<String>, Markable {
     }
 
     public String getFilename() {
-        return fpr.getFilename();
+        return source.getFilename();
+    }
+
+    public InputSource getSource() {
+        return source;
     }
 
     //courtesy of stackoverflow!
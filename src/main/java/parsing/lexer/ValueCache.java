@@ -0,0 +1,61 @@
+package parsing.lexer;
+
+import io.InputSource;
+
+/**
+ * Dedups short attribute values and text runs, e.g. {@code genre="Computer"}, so a tree built from a repetitive
+ * document holds one copy of each instead of one per occurrence. It is direct mapped: every value hashes to one slot,
+ * and a miss replaces whatever was there, so the cache never grows past its slots and needs no eviction bookkeeping.
+ * <p>
+ * Slots hold immutable entries, so one cache can be shared between threads without locking; a lost update only
+ * costs a later miss.
+ * </p>
+ */
+public final class ValueCache {
+    public static final int DEFAULT_SLOTS = 1024;
+    public static final int DEFAULT_MAX_LENGTH = 32;
+
+    private final Entry[] slots;
+    private final int maxLength;
+
+    public ValueCache() {
+        this(DEFAULT_SLOTS, DEFAULT_MAX_LENGTH);
+    }
+
+    //slots is rounded up to a power of two. longer values than maxLength bytes are rarely repeated and aren't cached
+    public ValueCache(int slots, int maxLength) {
+        this.slots = new Entry[Integer.highestOneBit(Math.max(slots, 1) * 2 - 1)];
+        this.maxLength = maxLength;
+    }
+
+    /**
+     * The UTF-8 bytes in [start, end) of the source as a String, the same instance as last time if the value is short
+     * and still cached.
+     */
+    public String get(InputSource source, int start, int end) {
+        if (end - start > maxLength)
+            return source.decode(start, end);
+
+        int hash = SymbolTable.hash(source, start, end);
+        int slot = hash & (slots.length - 1);
+        Entry entry = slots[slot];
+        if (entry != null && entry.hash == hash && SymbolTable.matches(entry.key, source, start, end))
+            return entry.value;
+
+        String value = source.decode(start, end);
+        slots[slot] = new Entry(hash, SymbolTable.copy(source, start, end), value);
+        return value;
+    }
+
+    private static final class Entry {
+        private final int hash;
+        private final byte[] key;
+        private final String value;
+
+        private Entry(int hash, byte[] key, String value) {
+            this.hash = hash;
+            this.key = key;
+            this.value = value;
+        }
+    }
+}
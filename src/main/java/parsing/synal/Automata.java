@@ -1,9 +1,44 @@
 package parsing.synal;
 
+import io.InputSource;
+import parsing.datastructs.XMLDocument;
 import parsing.exceptions.IllFormedXMLException;
 
-interface Automata {
+import java.io.PrintStream;
+
+public interface Automata {
 
     void parse() throws IllFormedXMLException;
 
+    /**
+     * Points the parser at a new input, so the next {@link #parse()} reads that. Buffers the parser has grown are
+     * kept and settings (debug, max depth) stay as they are; documents already returned are not touched.
+     */
+    void reset(InputSource source);
+
+    //debug output goes to System.err, for this parser only
+    void setDebug(boolean debug);
+
+    /**
+     * How deep elements may nest before the document is rejected; the root is at depth 1. Open elements are kept on
+     * the heap, so this is the only limit.
+     */
+    void setMaxDepth(int maxDepth);
+
+    XMLDocument getDocument();
+
+    String getFilename();
+
+    default void printResultingTree() {
+        printResultingTree(System.out);
+    }
+
+    default void printResultingTree(PrintStream out) {
+        XMLDocument xmlDocument = getDocument();
+        out.println("\"" + getFilename() + "\"" + " XML Document Version " + xmlDocument.getVersion() +
+                ",Standalone " + (xmlDocument.getStandalone() ? "yes" : "no") + ",Encoding " +
+                xmlDocument.getEncoding() + ",Structure:");
+        xmlDocument.getRoot().printSelfAndChildren("\t", out);
+    }
+
 }
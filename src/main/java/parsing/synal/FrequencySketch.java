@@ -0,0 +1,63 @@
+package parsing.synal;
+
+/**
+ * Roughly how often each key has been seen lately, in a fixed amount of memory: a count-min sketch of four rows of
+ * counters that saturate at 15. A key's frequency is the smallest of its four counters, so collisions can only make
+ * it look more frequent. Once ten increments per counter of a row have been recorded every counter is halved, so
+ * keys that were popular a while ago fade.
+ * <p>
+ * Not thread safe, {@link ParseCache} only uses it under its lock.
+ * </p>
+ */
+final class FrequencySketch {
+    private static final int ROWS = 4;
+    private static final int MAX_COUNT = 15;
+    private static final long[] SEEDS = {
+            0x9E3779B97F4A7C15L, 0xC2B2AE3D27D4EB4FL, 0x165667B19E3779F9L, 0xD6E8FEB86659FD93L};
+
+    private final byte[] counters;
+    private final int width;
+    private final int sampleSize;
+    private int additions = 0;
+
+    //width is rounded up to a power of two, it should be about the number of keys that are expected to be kept
+    FrequencySketch(int width) {
+        this.width = Integer.highestOneBit(Math.max(width, 16) * 2 - 1);
+        this.counters = new byte[ROWS * this.width];
+        this.sampleSize = 10 * this.width;
+    }
+
+    void increment(long hash) {
+        boolean added = false;
+        for (int row = 0; row < ROWS; row++) {
+            int index = indexOf(hash, row);
+            if (counters[index] < MAX_COUNT) {
+                ++counters[index];
+                added = true;
+            }
+        }
+
+        if (added && ++additions == sampleSize)
+            age();
+    }
+
+    int frequency(long hash) {
+        int frequency = MAX_COUNT;
+        for (int row = 0; row < ROWS; row++)
+            frequency = Math.min(frequency, counters[indexOf(hash, row)]);
+        return frequency;
+    }
+
+    private void age() {
+        for (int i = 0; i < counters.length; i++)
+            counters[i] >>= 1;
+        additions /= 2;
+    }
+
+    //a different mix of the hash for every row, so keys colliding in one row rarely do in the others
+    private int indexOf(long hash, int row) {
+        long mixed = (hash ^ SEEDS[row]) * SEEDS[(row + 1) % ROWS];
+        mixed ^= mixed >>> 29;
+        return row * width + ((int) mixed & (width - 1));
+    }
+}
@@ -1,5 +1,5 @@
 package parsing.synal;
 
 interface Matcher {
-    boolean match(String token);
+    boolean match(int token);
 }
@@ -0,0 +1,308 @@
+package parsing.synal;
+
+import io.InputSource;
+import io.SplicedSource;
+import parsing.datastructs.Element;
+import parsing.datastructs.XMLDocument;
+import parsing.exceptions.IllFormedXMLException;
+import parsing.lexer.SharedSymbolTable;
+import parsing.lexer.Tokenizer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.Function;
+
+/**
+ * Parses one document on several threads by splitting the root's content between its children. A quick byte scan
+ * (no lexing) finds where each child of the root ends; the content is cut at some of those points into chunks, and
+ * every chunk is parsed on the pool as a document of its own: the original prolog and root start tag, the chunk, and
+ * the original root end tag, spliced together without copying. The chunks' roots are then joined in document order,
+ * which gives the same tree a sequential parse would.
+ * <p>
+ * Anything the scan isn't sure about (comments, processing instructions, an unterminated tag, an empty root) and any
+ * error in a chunk make it parse the whole document sequentially instead, so error messages point at the real
+ * location. A document under {@link #MIN_PARALLEL_SIZE} bytes is parsed sequentially without being scanned.
+ * </p>
+ */
+public class ParallelAutomata implements Automata {
+    //below this, splitting costs more than it saves
+    public static final int MIN_PARALLEL_SIZE = 1 << 20;
+    private static final int CHUNKS_PER_THREAD = 4;
+
+    private InputSource source;
+    private final ForkJoinPool pool;
+    private final Function<Tokenizer, Automata> engine;
+    //one for all the chunks, so the joined tree has one instance of every name
+    private final SharedSymbolTable symbols = new SharedSymbolTable();
+    private boolean debug = false;
+    private int maxDepth = XMLAutomata.DEFAULT_MAX_DEPTH;
+    private XMLDocument xmlDocument;
+    private int chunkCount = 0;
+
+    //layout found by the scan
+    private int rootContentStart;
+    private int rootContentEnd;
+    private int sourceEnd;
+    private int[] boundaries = new int[1024];
+    private int boundaryCount;
+
+    public ParallelAutomata(InputSource source, ForkJoinPool pool, Function<Tokenizer, Automata> engine) {
+        this.source = source;
+        this.pool = pool;
+        this.engine = engine;
+    }
+
+    public ParallelAutomata(InputSource source) {
+        this(source, ForkJoinPool.commonPool(), XMLAutomata::new);
+    }
+
+    @Override
+    public void parse() throws IllFormedXMLException {
+        chunkCount = 0;
+        int[] cuts = scan() ? cut() : null;
+        if (cuts == null) {
+            if (debug)
+                System.err.println("ParallelAutomata: " + source.getFilename() + " can't be split, parsing sequentially");
+            parseSequentially();
+            return;
+        }
+
+        ArrayList<ForkJoinTask<XMLDocument>> tasks = new ArrayList<>(cuts.length - 1);
+        for (int c = 0; c < cuts.length - 1; c++) {
+            InputSource chunk = new SplicedSource(source,
+                    0, rootContentStart,
+                    cuts[c], cuts[c + 1],
+                    rootContentEnd, sourceEnd);
+            tasks.add(pool.submit(() -> parseChunk(chunk)));
+        }
+
+        XMLDocument joined = null;
+        try {
+            for (ForkJoinTask<XMLDocument> task : tasks) {
+                XMLDocument part = task.get();
+                if (joined == null) {
+                    joined = part;
+                    continue;
+                }
+
+                Element root = joined.getRoot();
+                for (String content : part.getRoot().getContents())
+                    root.addContent(content);
+                for (Element child : part.getRoot().getChildren())
+                    root.insertChild(child);
+            }
+        } catch (ExecutionException e) {
+            if (debug)
+                System.err.println("ParallelAutomata: chunk failed (" + e.getCause() + "), parsing sequentially");
+            for (ForkJoinTask<XMLDocument> task : tasks)
+                task.cancel(false);
+            parseSequentially();
+            return;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            for (ForkJoinTask<XMLDocument> task : tasks)
+                task.cancel(false);
+            parseSequentially();
+            return;
+        }
+
+        xmlDocument = joined;
+        chunkCount = tasks.size();
+        if (debug)
+            System.err.println("ParallelAutomata: " + source.getFilename() + " parsed in " + chunkCount + " chunks");
+    }
+
+    private XMLDocument parseChunk(InputSource chunk) throws IllFormedXMLException {
+        Automata parser = engine.apply(newTokenizer(chunk));
+        parser.setDebug(debug);
+        parser.setMaxDepth(maxDepth);
+        parser.parse();
+        return parser.getDocument();
+    }
+
+    private void parseSequentially() throws IllFormedXMLException {
+        Automata parser = engine.apply(newTokenizer(source));
+        parser.setDebug(debug);
+        parser.setMaxDepth(maxDepth);
+        parser.parse();
+        xmlDocument = parser.getDocument();
+    }
+
+    private Tokenizer newTokenizer(InputSource input) {
+        Tokenizer toker = new Tokenizer(input);
+        toker.setSymbolTable(symbols);
+        return toker;
+    }
+
+    //finds the root's content and the end of every child of the root. false if the document isn't plainly shaped
+    private boolean scan() {
+        //a smaller source can't have enough content to split, so it isn't scanned only to be parsed sequentially
+        if (source.byteAt(MIN_PARALLEL_SIZE - 1) == InputSource.EOF)
+            return false;
+
+        int pos = skipWhitespace(0);
+        if (source.regionMatches(pos, "<?xml")) {
+            pos = indexOf("?>", pos);
+            if (pos == -1)
+                return false;
+            pos = skipWhitespace(pos + 2);
+        }
+
+        if (source.byteAt(pos) != '<' || !startsTag(source.byteAt(pos + 1)))
+            return false;
+        int end = scanTag(pos);
+        if (end == -1 || source.byteAt(end - 2) == '/')
+            return false;
+        rootContentStart = end;
+
+        boundaryCount = 0;
+        int depth = 0;
+        pos = rootContentStart;
+        while (true) {
+            int b = source.byteAt(pos);
+            if (b == InputSource.EOF)
+                return false;
+            if (b != '<') {
+                ++pos;
+                continue;
+            }
+
+            int next = source.byteAt(pos + 1);
+            if (next != '/' && !startsTag(next))
+                return false;
+            end = scanTag(pos);
+            if (end == -1)
+                return false;
+
+            if (next == '/') {
+                if (depth == 0) {
+                    rootContentEnd = pos;
+                    break;
+                }
+                --depth;
+            } else if (source.byteAt(end - 2) != '/') {
+                ++depth;
+            }
+
+            if (depth == 0)
+                addBoundary(end);
+            pos = end;
+        }
+
+        sourceEnd = rootContentEnd;
+        while (source.byteAt(sourceEnd) != InputSource.EOF)
+            ++sourceEnd;
+        return true;
+    }
+
+    //picks the boundaries closest past equal shares of the content. null if that's fewer than two chunks
+    private int[] cut() {
+        int length = rootContentEnd - rootContentStart;
+        int chunks = Math.min(pool.getParallelism() * CHUNKS_PER_THREAD, boundaryCount);
+        if (length < MIN_PARALLEL_SIZE || chunks < 2)
+            return null;
+
+        int[] cuts = new int[chunks + 1];
+        int count = 0;
+        cuts[count++] = rootContentStart;
+        int b = 0;
+        for (int c = 1; c < chunks; c++) {
+            long target = rootContentStart + (long) length * c / chunks;
+            while (b < boundaryCount && boundaries[b] < target)
+                ++b;
+            if (b == boundaryCount)
+                break;
+            if (boundaries[b] > cuts[count - 1])
+                cuts[count++] = boundaries[b];
+        }
+        cuts[count++] = rootContentEnd;
+
+        return count < 3 ? null : Arrays.copyOf(cuts, count);
+    }
+
+    private void addBoundary(int position) {
+        if (boundaryCount == boundaries.length)
+            boundaries = Arrays.copyOf(boundaries, boundaryCount * 2);
+        boundaries[boundaryCount++] = position;
+    }
+
+    //'<' followed by this starts an element. comments, PIs and anything else are left to the sequential parser
+    private static boolean startsTag(int b) {
+        return b != '/' && b != '!' && b != '?' && b != InputSource.EOF && b > ' ';
+    }
+
+    //from the '<' of a tag to right after its '>', skipping quoted attribute values. -1 if it doesn't end
+    private int scanTag(int pos) {
+        int quote = 0;
+        for (int i = pos + 1; ; i++) {
+            int b = source.byteAt(i);
+            if (b == InputSource.EOF)
+                return -1;
+            if (quote != 0) {
+                if (b == quote)
+                    quote = 0;
+            } else if (b == '"' || b == '\'') {
+                quote = b;
+            } else if (b == '>') {
+                return i + 1;
+            } else if (b == '<') {
+                return -1;
+            }
+        }
+    }
+
+    private int skipWhitespace(int pos) {
+        while (true) {
+            int b = source.byteAt(pos);
+            if (b != ' ' && b != '\t' && b != '\r' && b != '\n')
+                return pos;
+            ++pos;
+        }
+    }
+
+    private int indexOf(String expected, int from) {
+        for (int i = from; source.byteAt(i) != InputSource.EOF; i++) {
+            if (source.regionMatches(i, expected))
+                return i;
+        }
+        return -1;
+    }
+
+    //0 if the last parse was sequential
+    public int getChunkCount() {
+        return chunkCount;
+    }
+
+    @Override
+    public void reset(InputSource source) {
+        this.source = source;
+        xmlDocument = null;
+        chunkCount = 0;
+    }
+
+    //passed on to the parser of every chunk
+    @Override
+    public void setDebug(boolean debug) {
+        this.debug = debug;
+    }
+
+    @Override
+    public void setMaxDepth(int maxDepth) {
+        if (maxDepth < 1)
+            throw new IllegalArgumentException("maxDepth must be at least 1, got " + maxDepth);
+        this.maxDepth = maxDepth;
+    }
+
+    @Override
+    public XMLDocument getDocument() {
+        return xmlDocument;
+    }
+
+    @Override
+    public String getFilename() {
+        return source.getFilename();
+    }
+}
@@ -0,0 +1,246 @@
+package parsing.synal;
+
+import io.ByteArraySource;
+import parsing.datastructs.XMLDocument;
+import parsing.exceptions.IllFormedXMLException;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Parsed documents kept by the content of their input, for when the same payloads come in over and over: a payload
+ * seen before is hashed and looked up instead of parsed. Documents are frozen before they are kept, so one instance
+ * is handed to every caller and thread that asks for the same bytes.
+ * <p>
+ * The cache is bounded by the estimated heap its documents retain ({@link XMLDocument#estimateRetainedBytes()}) and
+ * evicts along the lines of W-TinyLFU: new documents go to a small LRU window, and one pushed out of the window only
+ * joins the main LRU space if it has been asked for more often lately than the entries it would push out of there,
+ * which a {@link FrequencySketch} keeps track of. A burst of one-off payloads then can't flush out the ones that keep
+ * coming back.
+ * </p>
+ * <p>
+ * Lookups and bookkeeping are under one lock, parsing is not; two threads that miss on the same payload at once both
+ * parse it, and the first document kept wins. Ill-formed payloads are never kept. Inputs are told apart by a 128 bit
+ * hash and their length, which is fast but not collision resistant, so it isn't meant for payloads chosen to collide.
+ * </p>
+ */
+public class ParseCache {
+    public static final int DEFAULT_EXPECTED_ENTRIES = 1024;
+
+    private final long maxRetainedBytes;
+    //the window's share, about 1% of the whole
+    private final long maxWindowBytes;
+    private final FrequencySketch sketch;
+    //both in least recently used first order
+    private final LinkedHashMap<Key, Entry> window = new LinkedHashMap<>(16, 0.75f, true);
+    private final LinkedHashMap<Key, Entry> main = new LinkedHashMap<>(16, 0.75f, true);
+    private long windowBytes = 0;
+    private long mainBytes = 0;
+
+    private long hitCount = 0;
+    private long missCount = 0;
+    private long evictionCount = 0;
+
+    public ParseCache(long maxRetainedBytes) {
+        this(maxRetainedBytes, DEFAULT_EXPECTED_ENTRIES);
+    }
+
+    //expectedEntries sizes the frequency sketch, a few times what the cache holds is plenty
+    public ParseCache(long maxRetainedBytes, int expectedEntries) {
+        this.maxRetainedBytes = maxRetainedBytes;
+        this.maxWindowBytes = Math.max(maxRetainedBytes / 100, 1);
+        this.sketch = new FrequencySketch(expectedEntries);
+    }
+
+    public XMLDocument parse(byte[] input, String name) throws IllFormedXMLException {
+        return parse(input, 0, input.length, name);
+    }
+
+    /**
+     * The frozen document of the UTF-8 bytes in [offset, offset + length) of input, parsed with the calling thread's
+     * {@link Parsers#descent} parser if it isn't cached. The bytes must not change while they are parsed; name is
+     * only used in errors.
+     */
+    public XMLDocument parse(byte[] input, int offset, int length, String name) throws IllFormedXMLException {
+        Key key = Key.of(input, offset, length);
+        synchronized (this) {
+            sketch.increment(key.high);
+            Entry entry = window.get(key);
+            if (entry == null)
+                entry = main.get(key);
+            if (entry != null) {
+                ++hitCount;
+                return entry.document;
+            }
+            ++missCount;
+        }
+
+        XMLAutomata parser = Parsers.descent(new ByteArraySource(input, offset, length, name));
+        parser.parse();
+        XMLDocument document = parser.getDocument();
+        document.freeze();
+        Entry entry = new Entry(document, document.estimateRetainedBytes());
+
+        synchronized (this) {
+            Entry raced = window.get(key);
+            if (raced == null)
+                raced = main.get(key);
+            if (raced != null)
+                return raced.document;
+            add(key, entry);
+        }
+        return document;
+    }
+
+    private void add(Key key, Entry entry) {
+        window.put(key, entry);
+        windowBytes += entry.bytes;
+        Iterator<Map.Entry<Key, Entry>> eldest = window.entrySet().iterator();
+        while (windowBytes > maxWindowBytes && eldest.hasNext()) {
+            Map.Entry<Key, Entry> candidate = eldest.next();
+            eldest.remove();
+            windowBytes -= candidate.getValue().bytes;
+            admit(candidate.getKey(), candidate.getValue());
+        }
+    }
+
+    //the candidate joins the main space only if every entry it would push out is less frequent than it
+    private void admit(Key key, Entry candidate) {
+        long maxMainBytes = maxRetainedBytes - maxWindowBytes;
+        if (candidate.bytes > maxMainBytes) {
+            ++evictionCount;
+            return;
+        }
+
+        long excess = mainBytes + candidate.bytes - maxMainBytes;
+        if (excess > 0) {
+            int frequency = sketch.frequency(key.high);
+            long freed = 0;
+            //iterating doesn't count as access, the order stays as it is
+            for (Map.Entry<Key, Entry> victim : main.entrySet()) {
+                if (freed >= excess)
+                    break;
+                if (sketch.frequency(victim.getKey().high) >= frequency) {
+                    ++evictionCount;
+                    return;
+                }
+                freed += victim.getValue().bytes;
+            }
+
+            Iterator<Entry> victims = main.values().iterator();
+            while (excess > 0) {
+                Entry victim = victims.next();
+                victims.remove();
+                mainBytes -= victim.bytes;
+                excess -= victim.bytes;
+                ++evictionCount;
+            }
+        }
+
+        main.put(key, candidate);
+        mainBytes += candidate.bytes;
+    }
+
+    public synchronized void clear() {
+        window.clear();
+        main.clear();
+        windowBytes = 0;
+        mainBytes = 0;
+    }
+
+    public synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    public synchronized long getMissCount() {
+        return missCount;
+    }
+
+    //documents dropped to make room, and those that weren't admitted in the first place
+    public synchronized long getEvictionCount() {
+        return evictionCount;
+    }
+
+    public synchronized int size() {
+        return window.size() + main.size();
+    }
+
+    public synchronized long getRetainedBytes() {
+        return windowBytes + mainBytes;
+    }
+
+    public long getMaxRetainedBytes() {
+        return maxRetainedBytes;
+    }
+
+    private static final class Entry {
+        private final XMLDocument document;
+        private final long bytes;
+
+        private Entry(XMLDocument document, long bytes) {
+            this.document = document;
+            this.bytes = bytes;
+        }
+    }
+
+    //two 64 bit hashes of the input, computed 8 bytes at a time in one pass, and its length
+    private static final class Key {
+        private static final long P1 = 0x9E3779B97F4A7C15L;
+        private static final long P2 = 0xC2B2AE3D27D4EB4FL;
+        private static final long P3 = 0x165667B19E3779F9L;
+        private static final long P4 = 0x27D4EB2F165667C5L;
+
+        private final long high;
+        private final long low;
+        private final int length;
+
+        private Key(long high, long low, int length) {
+            this.high = high;
+            this.low = low;
+            this.length = length;
+        }
+
+        static Key of(byte[] input, int offset, int length) {
+            ByteBuffer words = ByteBuffer.wrap(input).order(ByteOrder.LITTLE_ENDIAN);
+            long high = P1 ^ length;
+            long low = P2 ^ length;
+            int i = 0;
+            for (; i + 8 <= length; i += 8) {
+                long word = words.getLong(offset + i);
+                high = Long.rotateLeft(high ^ word * P2, 31) * P1;
+                low = Long.rotateLeft(low ^ word * P4, 29) * P3;
+            }
+            long tail = 0;
+            for (int shift = 0; i < length; i++, shift += 8)
+                tail |= (input[offset + i] & 0xFFL) << shift;
+            high = Long.rotateLeft(high ^ tail * P2, 31) * P1;
+            low = Long.rotateLeft(low ^ tail * P4, 29) * P3;
+            return new Key(mix(high), mix(low), length);
+        }
+
+        //the final mix of MurmurHash3, so every input bit affects every output bit
+        private static long mix(long hash) {
+            hash ^= hash >>> 33;
+            hash *= 0xFF51AFD7ED558CCDL;
+            hash ^= hash >>> 33;
+            hash *= 0xC4CEB9FE1A85EC53L;
+            return hash ^ hash >>> 33;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key))
+                return false;
+            Key key = (Key) o;
+            return high == key.high && low == key.low && length == key.length;
+        }
+
+        @Override
+        public int hashCode() {
+            return (int) high;
+        }
+    }
+}
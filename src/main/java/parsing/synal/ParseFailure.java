@@ -0,0 +1,42 @@
+package parsing.synal;
+
+import parsing.exceptions.IllFormedXMLException;
+
+import static parsing.XMLToken.*;
+
+/**
+ * Reusable record of why a rule failed. Rules report failure through their return value and note the details here,
+ * so backtracking over alternatives costs no exception. Only the furthest failure is kept, since that is where the
+ * document actually stops making sense; it is turned into an exception once, if the whole parse fails.
+ */
+class ParseFailure {
+    private int line = 0;
+    private int column = 0;
+    private int token = KIND_ERROR;
+    private String expected = null;
+
+    void reset() {
+        line = 0;
+        column = 0;
+        token = KIND_ERROR;
+        expected = null;
+    }
+
+    void record(int line, int column, int token, String expected) {
+        if (this.expected != null && (line < this.line || (line == this.line && column <= this.column)))
+            return;
+
+        this.line = line;
+        this.column = column;
+        this.token = token;
+        this.expected = expected;
+    }
+
+    boolean isSet() {
+        return expected != null;
+    }
+
+    IllFormedXMLException toException() {
+        return new IllFormedXMLException(line, column, expected, describe(token));
+    }
+}
@@ -0,0 +1,68 @@
+package parsing.synal;
+
+import io.InputSource;
+import parsing.lexer.SharedSymbolTable;
+import parsing.lexer.Tokenizer;
+import parsing.lexer.ValueCache;
+
+/**
+ * One reusable parser of each kind per thread, reset onto every new input. Parsing many small documents this way only
+ * allocates the resulting trees; the tokenizer, the stacks and the buffers are created once per thread and grow to the
+ * largest document seen.
+ * <p>
+ * The parser returned belongs to the calling thread until its next call for the same kind, so it must not be kept
+ * around (or used from a handler of its own parse) past that. Settings made on it, like the max depth, carry over.
+ * </p>
+ * All of them share one symbol table and value cache, so the documents parsed on any thread share their names and
+ * short values.
+ */
+public final class Parsers {
+    private static final ThreadLocal<XMLAutomata> DESCENT = new ThreadLocal<>();
+    private static final ThreadLocal<TableDrivenAutomata> TABLE = new ThreadLocal<>();
+    private static final ThreadLocal<XMLPullParser> PULL = new ThreadLocal<>();
+    private static final SharedSymbolTable SYMBOLS = new SharedSymbolTable();
+    private static final ValueCache VALUES = new ValueCache();
+
+    private Parsers() {
+    }
+
+    public static XMLAutomata descent(InputSource source) {
+        XMLAutomata parser = DESCENT.get();
+        if (parser == null) {
+            parser = new XMLAutomata(newTokenizer(source));
+            DESCENT.set(parser);
+        } else {
+            parser.reset(source);
+        }
+        return parser;
+    }
+
+    public static TableDrivenAutomata table(InputSource source) {
+        TableDrivenAutomata parser = TABLE.get();
+        if (parser == null) {
+            parser = new TableDrivenAutomata(newTokenizer(source));
+            TABLE.set(parser);
+        } else {
+            parser.reset(source);
+        }
+        return parser;
+    }
+
+    public static XMLPullParser pull(InputSource source) {
+        XMLPullParser parser = PULL.get();
+        if (parser == null) {
+            parser = new XMLPullParser(newTokenizer(source));
+            PULL.set(parser);
+        } else {
+            parser.reset(source);
+        }
+        return parser;
+    }
+
+    private static Tokenizer newTokenizer(InputSource source) {
+        Tokenizer toker = new Tokenizer(source);
+        toker.setSymbolTable(SYMBOLS);
+        toker.setValueCache(VALUES);
+        return toker;
+    }
+}
@@ -0,0 +1,269 @@
+package parsing.synal;
+
+import io.InputSource;
+import parsing.datastructs.XMLDocument;
+import parsing.events.AttributeList;
+import parsing.events.SpanHandler;
+import parsing.events.TreeBuilder;
+import parsing.events.XMLHandler;
+import parsing.exceptions.IllFormedXMLException;
+import parsing.lexer.Tokenizer;
+
+import java.util.Arrays;
+
+import static parsing.XMLToken.*;
+import static parsing.synal.XMLGrammar.*;
+
+/**
+ * Table driven LL(1) parser for the same grammar {@link XMLAutomata} implements by hand (grammar-stuff/
+ * simple_xml_grammar.txt), rewritten over the lexer's tokens so that one token of lookahead always decides the
+ * production. The productions and the parse table are in {@link XMLGrammar}.
+ * <p>
+ * Parsing is a single loop over an explicit symbol stack: terminals are matched against the lookahead, nonterminals
+ * are replaced by the production the table picks, and action symbols report what was read to the {@link XMLHandler}
+ * (a {@link TreeBuilder} unless told otherwise). There is no speculation, so the first mismatch is the error.
+ * </p>
+ * Unlike {@link XMLAutomata}, this engine doesn't let anything through that the grammar doesn't: attributes need
+ * whitespace before them and the XMLDecl has to be complete.
+ */
+public class TableDrivenAutomata implements Automata {
+    private final Tokenizer toker;
+    private final XMLHandler handler;
+    //the same handler if it takes spans, null otherwise
+    private final SpanHandler spanHandler;
+    //null when the events go to some other handler
+    private final TreeBuilder treeBuilder;
+    private final AttributeList attributes = new AttributeList();
+
+    private int[] stack = new int[64];
+    private int stackSize = 0;
+    private String[] openElements = new String[16];
+    private int openCount = 0;
+    private boolean debug = false;
+    private int maxDepth = XMLAutomata.DEFAULT_MAX_DEPTH;
+
+    //span and kind of the terminal matched last, for the actions that follow it
+    private int lastKind;
+    private int lastStart;
+    private int lastEnd;
+    private int lastLine;
+    private int lastColumn;
+    private int literalStart;
+    private int literalEnd;
+    //null when the handler takes spans
+    private String literal;
+    private String attributeName;
+    private String elementName;
+    private String declVersion;
+    private boolean declStandalone;
+    //the text run of the current element, -1 when none has started. leading whitespace doesn't start one
+    private int textStart = -1;
+    private int textEnd = -1;
+
+    public TableDrivenAutomata(Tokenizer toker) {
+        this.toker = toker;
+        this.treeBuilder = new TreeBuilder();
+        this.handler = treeBuilder;
+        this.spanHandler = null;
+    }
+
+    public TableDrivenAutomata(Tokenizer toker, XMLHandler handler) {
+        this.toker = toker;
+        this.treeBuilder = null;
+        this.handler = handler;
+        this.spanHandler = handler instanceof SpanHandler ? (SpanHandler) handler : null;
+    }
+
+
+    @Override
+    public void parse() throws IllFormedXMLException {
+        stackSize = 0;
+        openCount = 0;
+        textStart = -1;
+        declStandalone = true;
+        if (spanHandler != null)
+            spanHandler.startDocument(toker.getSource());
+        else
+            handler.startDocument();
+        push(DOCUMENT);
+
+        int lookahead = toker.next();
+        while (stackSize > 0) {
+            int symbol = stack[--stackSize];
+
+            if (isTerminal(symbol)) {
+                if (symbol != lookahead)
+                    throw unexpected(describe(symbol), lookahead);
+                lastKind = lookahead;
+                lastStart = toker.getTokenStart();
+                lastEnd = toker.getTokenEnd();
+                lastLine = toker.getTokenLine();
+                lastColumn = toker.getTokenColumn();
+                if (lookahead != KIND_EOF)
+                    lookahead = toker.next();
+            } else if (isNonTerminal(symbol)) {
+                int production = TABLE[symbol - NT_BASE][lookahead];
+                if (production == -1)
+                    throw unexpected(expectedAt(symbol), lookahead);
+                if (debug)
+                    System.err.println("TableDrivenAutomata: " + NT_NAMES[symbol - NT_BASE] + " on " +
+                            describe(lookahead) + " -> production " + production);
+                int[] rhs = PRODUCTIONS[production];
+                for (int i = rhs.length - 1; i >= 0; i--)
+                    push(rhs[i]);
+            } else {
+                act(symbol);
+            }
+        }
+        handler.endDocument();
+
+        if (debug)
+            System.err.println("Token window high-water mark: " + toker.getWindowHighWaterMark());
+    }
+
+    private void act(int action) throws IllFormedXMLException {
+        switch (action) {
+            case A_VERSION_KEYWORD:
+                expectLast(TOKEN_VERSION_KEYWORD);
+                break;
+            case A_VERSION:
+                if (!toker.textEquals(literalStart, literalEnd, TOKEN_VERSION_1_0))
+                    throw unexpectedLiteral(TOKEN_VERSION_1_0);
+                declVersion = TOKEN_VERSION_1_0;
+                break;
+            case A_STANDALONE_KEYWORD:
+                expectLast(TOKEN_STANDALONE_KEYWORD);
+                break;
+            case A_STANDALONE:
+                declStandalone = toker.textEquals(literalStart, literalEnd, TOKEN_YES_KEYWORD);
+                if (!declStandalone && !toker.textEquals(literalStart, literalEnd, TOKEN_NO_KEYWORD))
+                    throw unexpectedLiteral(TOKEN_YES_KEYWORD + " or " + TOKEN_NO_KEYWORD);
+                break;
+            case A_XML_DECL:
+                handler.xmlDeclaration(declVersion, declStandalone);
+                break;
+            case A_LITERAL_OPEN:
+                literalStart = lastEnd;
+                toker.pin(literalStart);
+                break;
+            case A_LITERAL_CLOSE:
+                literalEnd = lastStart;
+                literal = spanHandler != null ? null : toker.getValue(literalStart, literalEnd);
+                toker.unpin();
+                break;
+            case A_START_TAG:
+                if (openCount == maxDepth)
+                    throw new IllFormedXMLException(lastLine, lastColumn, "at most " + maxDepth + " nested elements",
+                            describe(lastKind));
+                flushText();
+                elementName = toker.getName(lastStart, lastEnd);
+                attributes.clear();
+                break;
+            case A_ATTRIBUTE_NAME:
+                attributeName = toker.getName(lastStart, lastEnd);
+                break;
+            case A_ATTRIBUTE_VALUE:
+                if (spanHandler != null)
+                    attributes.add(attributeName, toker.getSource(), literalStart, literalEnd);
+                else
+                    attributes.add(attributeName, literal);
+                break;
+            case A_EMPTY_ELEMENT:
+                handler.startElement(elementName, attributes);
+                handler.endElement(elementName);
+                break;
+            case A_OPEN_ELEMENT:
+                handler.startElement(elementName, attributes);
+                if (openCount == openElements.length)
+                    openElements = Arrays.copyOf(openElements, openCount * 2);
+                openElements[openCount++] = elementName;
+                break;
+            case A_END_TAG:
+                flushText();
+                String closed = openElements[--openCount];
+                openElements[openCount] = null;
+                if (!toker.textEquals(lastStart, lastEnd, closed))
+                    throw new IllFormedXMLException(lastLine, lastColumn,
+                            TOKEN_END_TAG_START + closed + TOKEN_BIGGER_THAN, describe(lastKind));
+                handler.endElement(closed);
+                break;
+            case A_TEXT:
+                //whitespace only continues a run, so whitespace on its own or before the text is dropped
+                if (lastKind != KIND_WHITESPACE && textStart == -1) {
+                    textStart = lastStart;
+                    toker.pin(textStart);
+                }
+                if (textStart != -1)
+                    textEnd = lastEnd;
+                break;
+            default:
+                throw new IllegalStateException("Unknown action " + action);
+        }
+    }
+
+    private void flushText() {
+        if (textStart == -1)
+            return;
+        if (spanHandler != null)
+            spanHandler.characters(textStart, textEnd);
+        else
+            handler.characters(toker.getValue(textStart, textEnd));
+        toker.unpin();
+        textStart = -1;
+    }
+
+    private void push(int symbol) {
+        if (stackSize == stack.length)
+            stack = Arrays.copyOf(stack, stackSize * 2);
+        stack[stackSize++] = symbol;
+    }
+
+    private void expectLast(String keyword) throws IllFormedXMLException {
+        if (!toker.textEquals(lastStart, lastEnd, keyword))
+            throw new IllFormedXMLException(lastLine, lastColumn, keyword, describe(lastKind));
+    }
+
+    private IllFormedXMLException unexpectedLiteral(String expected) {
+        return new IllFormedXMLException(lastLine, lastColumn, expected,
+                "\"" + toker.getText(literalStart, literalEnd) + "\"");
+    }
+
+    private IllFormedXMLException unexpected(String expected, int lookahead) {
+        return new IllFormedXMLException(toker.getTokenLine(), toker.getTokenColumn(), expected, describe(lookahead));
+    }
+
+
+    @Override
+    public void reset(InputSource source) {
+        toker.reset(source);
+        attributes.clear();
+        Arrays.fill(openElements, 0, openCount, null);
+        openCount = 0;
+        stackSize = 0;
+    }
+
+    @Override
+    public void setDebug(boolean debug) {
+        this.debug = debug;
+        toker.setDebug(debug);
+    }
+
+    @Override
+    public void setMaxDepth(int maxDepth) {
+        if (maxDepth < 1)
+            throw new IllegalArgumentException("maxDepth must be at least 1, got " + maxDepth);
+        this.maxDepth = maxDepth;
+    }
+
+    //null if the events went to a handler of the caller's
+    @Override
+    public XMLDocument getDocument() {
+        return treeBuilder == null ? null : treeBuilder.getDocument();
+    }
+
+    @Override
+    public String getFilename() {
+        return toker.getFilename();
+    }
+
+}
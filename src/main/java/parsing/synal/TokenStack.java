@@ -1,110 +1,79 @@
 package parsing.synal;
 
-import parsing.Markable;
-
-import java.util.Stack;
-
-class TokenStack implements Markable {
-
-    public static boolean _DEBUG = false;
-    private final Stack<Stack<String>> markStates = new Stack<>();
-    private Stack<String> tokens = new Stack<>();
-
-    public void addTok(String tok) {
-        tokens.add(tok);
+import java.util.Arrays;
+
+import static parsing.XMLToken.*;
+
+/**
+ * History of the token kinds consumed by the parser, only kept to be printed when debugging. The marks themselves
+ * live in the tokenizer's token window; the parser tells this history where the tokenizer is after every rewind, and
+ * rewinding truncates, so nothing is copied. Tokens below the oldest mark can never be rewound to, so they are
+ * dropped whenever no mark is active.
+ */
+class TokenStack {
+
+    private int[] tokens = new int[256];
+    //tokens[0] is the token at this absolute position in the history
+    private int base = 0;
+    private int count = 0;
+
+    //forgets the history, keeps the capacity
+    public void reset() {
+        base = 0;
+        count = 0;
     }
 
-    public String popTok() {
-        return tokens.pop();
+    //marked is whether the tokenizer holds any mark, i.e. whether the history so far may still be rewound to
+    public void addTok(int tok, boolean marked) {
+        if (!marked) {
+            base = count;
+        }
+        int slot = count - base;
+        if (slot == tokens.length)
+            tokens = Arrays.copyOf(tokens, slot * 2);
+        tokens[slot] = tok;
+        ++count;
     }
 
-    public int getTokCount() {
-        return tokens.size();
+    //the tokenizer went back to this many consumed tokens
+    public void rewind(int count) {
+        this.count = Math.max(count, base);
     }
 
-    public boolean isEmptyTok() {
-        return tokens.isEmpty();
+    public void printMark(int index) {
+        System.err.println("Marking token stack with index " + index + " :");
+        printTokens();
     }
 
-    @Override
-    public void mark() {
-        if (_DEBUG) {
-            System.err.println("Marking token stack with index " + markStates.size() + " :");
-            for (String token : tokens) {
-                switch (token) {
-                    case "\n":
-                        System.err.print("\\n|");
-                        break;
-                    case "\r":
-                        System.err.print("\\r|");
-                        break;
-                    case "\t":
-                        System.err.print("\\t|");
-                        break;
-
-                    default:
-                        System.err.print(token + "|");
-                }
-            }
-            System.err.println();
-        }
-        markStates.add((Stack<String>) tokens.clone());
+    public void printConsumeMark(int index) {
+        System.err.println("Current token stack is: ");
+        printTokens();
+        System.err.println("consuming mark index " + index);
     }
 
-    @Override
-    public boolean hasMark() {
-        return !markStates.isEmpty();
+    public void printRewound() {
+        System.err.println("New token stack is: ");
+        printTokens();
     }
 
-    @Override
-    public void consumeMark() {
-        if (_DEBUG) {
-            System.err.println("Current token stack is: ");
-            for (String token : tokens) {
-                switch (token) {
-                    case "\n":
-                        System.err.print("\\n|");
-                        break;
-                    case "\r":
-                        System.err.print("\\r|");
-                        break;
-                    case "\t":
-                        System.err.print("\\t|");
-                        break;
-
-                    default:
-                        System.err.print(token + "|");
-                }
+    //only the retained part of the history can be printed
+    private void printTokens() {
+        for (int i = 0; i < count - base; i++) {
+            switch (tokens[i]) {
+                case KIND_LINEFEED:
+                    System.err.print("\\n|");
+                    break;
+                case KIND_CARRIAGE_RETURN:
+                    System.err.print("\\r|");
+                    break;
+                case KIND_TAB:
+                    System.err.print("\\t|");
+                    break;
+
+                default:
+                    System.err.print(describe(tokens[i]) + "|");
             }
-            System.err.println();
-            System.err.println("consuming mark index " + (markStates.size() - 1));
         }
-
-        tokens = markStates.pop();
-        if (_DEBUG) {
-            System.err.println("New token stack is: ");
-            for (String token : tokens) {
-                switch (token) {
-                    case "\n":
-                        System.err.print("\\n|");
-                        break;
-                    case "\r":
-                        System.err.print("\\r|");
-                        break;
-                    case "\t":
-                        System.err.print("\\t|");
-                        break;
-
-                    default:
-                        System.err.print(token + "|");
-                }
-            }
-            System.err.println();
-        }
-    }
-
-    @Override
-    public void unmark() {
-        markStates.pop();
+        System.err.println();
     }
 }
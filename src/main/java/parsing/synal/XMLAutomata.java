@@ -1,98 +1,143 @@
 package parsing.synal;
 
-import org.jetbrains.annotations.NotNull;
+import io.InputSource;
 import parsing.Markable;
-import parsing.datastructs.Element;
 import parsing.datastructs.XMLDocument;
-import parsing.exceptions.EOFXMLException;
+import parsing.events.AttributeList;
+import parsing.events.SpanHandler;
+import parsing.events.TreeBuilder;
+import parsing.events.XMLHandler;
 import parsing.exceptions.IllFormedXMLException;
 import parsing.lexer.Tokenizer;
 
 import java.util.Arrays;
-import java.util.HashMap;
 
 import static parsing.XMLToken.*;
 
+/**
+ * Recursive descent parser with backtracking. Rules don't throw: they return false (or null) when they don't match,
+ * leave the details in {@link ParseFailure}, and the caller rewinds to its mark and tries the next alternative. The
+ * only exception is built in {@link #parse()}, once, if the document as a whole doesn't parse.
+ * <p>
+ * What the parser reads is pushed to an {@link XMLHandler} as soon as it is committed to; nothing speculative is
+ * reported. By default that handler is a {@link TreeBuilder}, and {@link #getDocument()} returns its tree. A
+ * {@link SpanHandler} gets attribute values and text as spans of the input, and they are never decoded here.
+ * </p>
+ */
 public class XMLAutomata implements Automata, Markable {
-    public static boolean _DEBUG = false;
+    public static final int DEFAULT_MAX_DEPTH = 10000;
 
     private final Tokenizer toker;
+    //only fed while debugging, the marks are the tokenizer's
     private final TokenStack tokStack = new TokenStack();
-    private XMLDocument xmlDocument;
-    private String currentToken = null;
+    private final ParseFailure failure = new ParseFailure();
+    private final XMLHandler handler;
+    //the same handler if it takes spans, null otherwise
+    private final SpanHandler spanHandler;
+    //null when the events go to some other handler
+    private final TreeBuilder treeBuilder;
+    private final AttributeList attributes = new AttributeList();
+    //kept, a lambda that uses this would otherwise be allocated on every call
+    private final Matcher whitespace = token -> tokenMeetsExpected(token, KIND_WHITESPACE);
+    private boolean debug = false;
+    private int currentToken = KIND_ERROR;
+    private String[] openElements = new String[16];
+    private int openCount = 0;
+    private int maxDepth = DEFAULT_MAX_DEPTH;
+    //the XMLDecl, reported once the prolog has been committed to
+    private String declVersion;
+    private boolean declStandalone;
+    //span of the literal read last, and its value unless the handler takes spans
+    private int literalStart;
+    private int literalEnd;
+    private String literal;
 
     public XMLAutomata(Tokenizer toker) {
         this.toker = toker;
+        this.treeBuilder = new TreeBuilder();
+        this.handler = treeBuilder;
+        this.spanHandler = null;
+    }
+
+    public XMLAutomata(Tokenizer toker, XMLHandler handler) {
+        this.toker = toker;
+        this.treeBuilder = null;
+        this.handler = handler;
+        this.spanHandler = handler instanceof SpanHandler ? (SpanHandler) handler : null;
     }
 
     @Override
     public void parse() throws IllFormedXMLException {
-        TokenStack._DEBUG = _DEBUG; // share the debug val
-        Tokenizer._DEBUG = _DEBUG; // share the debug val
-
         //document  ::=  prolog element Misc*
         //start with prolog
-        xmlDocument = new XMLDocument();
-        try {
-            mark();
-            parseProlog();
+        failure.reset();
+        if (spanHandler != null)
+            spanHandler.startDocument(toker.getSource());
+        else
+            handler.startDocument();
+
+        mark();
+        if (parseProlog()) {
             unmark();
-        } catch (IllFormedXMLException e) {
-            if (_DEBUG)
-                error(toker.getLine(), toker.getColumn(), "XMLDecl does not exist! Message: \n" + e.getMessage());
+            handler.xmlDeclaration(declVersion, declStandalone);
+        } else {
+            if (debug)
+                error(toker.getLine(), toker.getColumn(), "XMLDecl does not exist!");
             //according to the standard (but not the grammar), prolog is optional, so we will respect that
             consumeMark(); // and revert to the last known state
-        } catch (EOFXMLException e) {
-            if (_DEBUG)
-                error(toker.getLine(), toker.getColumn(), "EOFXMLException while parsing XMLDecl! " +
-                        "Message: \n" + e.getMessage());
-            throw new IllFormedXMLException("Unexpected EOF");
+            parseMisc(); //what is left of the prolog without an XMLDecl
         }
 
-        //parse root element
-        try {
-            mark();
-            xmlDocument.setRoot(parseElement());
-            unmark();
-        } catch (EOFXMLException e) {
-            if (_DEBUG)
-                error(toker.getLine(), toker.getColumn(), "EOFXMLException while parsing root element!" +
-                        " Message: \n" + e.getMessage());
-            throw new IllFormedXMLException("Unexpected EOF");
-        }
+        //parse root element. no mark here: nothing rewinds past the root, and a mark would pin the token window
+        // to the start of the document
+        if (!parseElement())
+            throw failure.toException();
 
         //parse misc, any results should probably be ignored in this impl (explained below)
-        parseMisc(); //we don't care if we hit EOF here,
+        parseMisc();
+        //but nothing else may follow the root element, a second one included
+        advance();
+        if (!tokenMeetsExpected(currentToken, KIND_EOF)) {
+            expected(TOKEN_COMMENT_START + " or " + describe(KIND_EOF));
+            throw failure.toException();
+        }
+        handler.endDocument();
+
+        if (debug)
+            System.err.println("Token window high-water mark: " + toker.getWindowHighWaterMark());
     }
 
-    //Prolog should return an XML document with set encoding and standalone.
-    private void parseProlog() throws IllFormedXMLException, EOFXMLException {
-        parseXMLDecl();
+    //Prolog should find the version and standalone of the document.
+    private boolean parseProlog() {
+        if (!parseXMLDecl())
+            return false;
 
         parseMisc();
+        return true;
     }
 
     //This is optional. XMLDecl can not exist, meaning we need to at least return an "empty" xml document if it doesn't.
-    private void parseXMLDecl() throws IllFormedXMLException, EOFXMLException {
+    private boolean parseXMLDecl() {
         parseWhitespace(); //whitespace up until XML decl is ignored
 
         advance();
 
-        if (!tokenMeetsExpected(currentToken, TOKEN_XML_DECL_START)) {
-            reportExpectedTokenError(currentToken, TOKEN_XML_DECL_START);
-        }
+        if (!tokenMeetsExpected(currentToken, KIND_XML_DECL_START))
+            return expected(TOKEN_XML_DECL_START);
 
         String version = parseVersionInfo();
-        xmlDocument.setVersion(version);
+        if (version == null)
+            return false;
+        declVersion = version;
+        declStandalone = true;
 
         //we don't care if this exists
-        try {
-            mark();
-            parseSDDecl();
+        mark();
+        if (parseSDDecl()) {
             unmark();
-        } catch (IllFormedXMLException e) {
-            if (_DEBUG)
-                error(toker.getLine(), toker.getColumn(), "SDDecl does not exist! Message:\n" + e.getMessage());
+        } else {
+            if (debug)
+                error(toker.getLine(), toker.getColumn(), "SDDecl does not exist!");
             //if it doesn't exist, it's okay, just continue from where we left off.
             consumeMark();
         }
@@ -102,591 +147,562 @@ public class XMLAutomata implements Automata, Markable {
         advance();
 
         //if it's TOKEN_XML_DECL_END, XML decl is valid, and done!
-        if (!tokenMeetsExpected(currentToken, TOKEN_XML_DECL_END)) {
-            reportExpectedTokenError(currentToken, TOKEN_XML_DECL_END);
-        }
+        if (!tokenMeetsExpected(currentToken, KIND_XML_DECL_END))
+            return expected(TOKEN_XML_DECL_END);
 
+        return true;
     }
 
-    private String parseVersionInfo() throws IllFormedXMLException, EOFXMLException {
+    private String parseVersionInfo() {
         String vers = "unspecified";
-        if (!parseWhitespace())
-            reportExpectedTokenError(currentToken, "whitespace rule match");
+        if (!parseWhitespace()) {
+            expected("whitespace rule match");
+            return null;
+        }
 
         advance();
 
-        if (!tokenMeetsExpected(currentToken, TOKEN_VERSION_KEYWORD))
-            reportExpectedTokenError(currentToken, TOKEN_VERSION_KEYWORD);
+        if (!tokenIsName(TOKEN_VERSION_KEYWORD)) {
+            expected(TOKEN_VERSION_KEYWORD);
+            return null;
+        }
 
-        parseEq();
+        if (!parseEq())
+            return null;
 
         advance();
 
         //follow the single quote path, otherwise the double quote
-        if (tokenMeetsExpected(currentToken, TOKEN_SINGLE_QUOTE)) {
+        if (tokenMeetsExpected(currentToken, KIND_SINGLE_QUOTE)) {
             advance();
 
-            if (!tokenMeetsExpected(currentToken, TOKEN_VERSION_1_0))
-                reportExpectedTokenError(currentToken, TOKEN_VERSION_1_0);
+            if (!tokenIsCharData(TOKEN_VERSION_1_0)) {
+                expected(TOKEN_VERSION_1_0);
+                return null;
+            }
 
             vers = TOKEN_VERSION_1_0;
 
             advance();
-            if (!tokenMeetsExpected(currentToken, TOKEN_SINGLE_QUOTE))
-                reportExpectedTokenError(currentToken, TOKEN_SINGLE_QUOTE);
+            if (!tokenMeetsExpected(currentToken, KIND_SINGLE_QUOTE)) {
+                expected(TOKEN_SINGLE_QUOTE);
+                return null;
+            }
 
             return vers;
         }
 
-        if (tokenMeetsExpected(currentToken, TOKEN_DOUBLE_QUOTE)) {
+        if (tokenMeetsExpected(currentToken, KIND_DOUBLE_QUOTE)) {
             advance();
-            if (!tokenMeetsExpected(currentToken, TOKEN_VERSION_1_0))
-                reportExpectedTokenError(currentToken, TOKEN_VERSION_1_0);
+            if (!tokenIsCharData(TOKEN_VERSION_1_0)) {
+                expected(TOKEN_VERSION_1_0);
+                return null;
+            }
 
             vers = TOKEN_VERSION_1_0;
 
             advance();
-            if (!tokenMeetsExpected(currentToken, TOKEN_DOUBLE_QUOTE))
-                reportExpectedTokenError(currentToken, TOKEN_DOUBLE_QUOTE);
+            if (!tokenMeetsExpected(currentToken, KIND_DOUBLE_QUOTE)) {
+                expected(TOKEN_DOUBLE_QUOTE);
+                return null;
+            }
 
             return vers;
         }
 
-        return vers;
+        expected(TOKEN_DOUBLE_QUOTE + " or " + TOKEN_SINGLE_QUOTE);
+        return null;
     }
 
-    private void parseEq() throws IllFormedXMLException, EOFXMLException {
+    private boolean parseEq() {
         parseWhitespace();
         advance();
-        if (!tokenMeetsExpected(currentToken, TOKEN_EQUALS))
-            reportExpectedTokenError(currentToken, TOKEN_EQUALS);
+        if (!tokenMeetsExpected(currentToken, KIND_EQUALS))
+            return expected(TOKEN_EQUALS);
 
         parseWhitespace();
+        return true;
     }
 
-    private void parseSDDecl() throws IllFormedXMLException, EOFXMLException {
-        String standalone;
+    private boolean parseSDDecl() {
+        boolean standalone;
 
-        parseWhitespace();
+        //S 'standalone', set apart from the version like an attribute
+        if (!parseWhitespace())
+            return expected("whitespace rule match");
 
         advance();
 
-        if (!tokenMeetsExpected(currentToken, TOKEN_STANDALONE_KEYWORD)) {
-            reportExpectedTokenError(currentToken, TOKEN_STANDALONE_KEYWORD);
-        }
+        if (!tokenIsName(TOKEN_STANDALONE_KEYWORD))
+            return expected(TOKEN_STANDALONE_KEYWORD);
 
-        parseEq();
+        if (!parseEq())
+            return false;
 
         advance();
 
         //follow the single quote path, otherwise the double quote
-        if (tokenMeetsExpected(currentToken, TOKEN_SINGLE_QUOTE)) {
+        if (tokenMeetsExpected(currentToken, KIND_SINGLE_QUOTE)) {
             advance();
 
-            if (!tokenMeetsExpected(currentToken, TOKEN_YES_KEYWORD)
-                    && !tokenMeetsExpected(currentToken, TOKEN_NO_KEYWORD)) {
-                reportExpectedTokenError(currentToken, TOKEN_YES_KEYWORD + " or " + TOKEN_NO_KEYWORD);
-            }
+            if (!tokenIsCharData(TOKEN_YES_KEYWORD) && !tokenIsCharData(TOKEN_NO_KEYWORD))
+                return expected(TOKEN_YES_KEYWORD + " or " + TOKEN_NO_KEYWORD);
 
-            standalone = currentToken;
+            standalone = tokenIsCharData(TOKEN_YES_KEYWORD);
 
             advance();
-            if (!tokenMeetsExpected(currentToken, TOKEN_SINGLE_QUOTE)) {
-                reportExpectedTokenError(currentToken, TOKEN_SINGLE_QUOTE);
-            }
-
-            xmlDocument.setStandalone(standalone.equals("yes"));
+            if (!tokenMeetsExpected(currentToken, KIND_SINGLE_QUOTE))
+                return expected(TOKEN_SINGLE_QUOTE);
 
+            declStandalone = standalone;
+            return true;
         }
 
-        if (tokenMeetsExpected(currentToken, TOKEN_DOUBLE_QUOTE)) {
+        if (tokenMeetsExpected(currentToken, KIND_DOUBLE_QUOTE)) {
             advance();
 
-            if (!tokenMeetsExpected(currentToken, TOKEN_YES_KEYWORD)
-                    && !tokenMeetsExpected(currentToken, TOKEN_NO_KEYWORD)) {
-                reportExpectedTokenError(currentToken, TOKEN_YES_KEYWORD + " or " + TOKEN_NO_KEYWORD);
-            }
+            if (!tokenIsCharData(TOKEN_YES_KEYWORD) && !tokenIsCharData(TOKEN_NO_KEYWORD))
+                return expected(TOKEN_YES_KEYWORD + " or " + TOKEN_NO_KEYWORD);
 
-            standalone = currentToken;
+            standalone = tokenIsCharData(TOKEN_YES_KEYWORD);
 
             advance();
-            if (!tokenMeetsExpected(currentToken, TOKEN_DOUBLE_QUOTE)) {
-                reportExpectedTokenError(currentToken, TOKEN_DOUBLE_QUOTE);
-            }
-
-            xmlDocument.setStandalone(standalone.equals("yes"));
+            if (!tokenMeetsExpected(currentToken, KIND_DOUBLE_QUOTE))
+                return expected(TOKEN_DOUBLE_QUOTE);
 
+            declStandalone = standalone;
+            return true;
         }
 
+        //the value has to be quoted, like any other
+        return expected(TOKEN_DOUBLE_QUOTE + " or " + TOKEN_SINGLE_QUOTE);
     }
 
     //sometimes this is optional, some times it is not. as a result, this should return a boolean to identify it
     private boolean parseWhitespace() {
         //match one or more whitespace tokens (?) +
-        return matchOneOrMoreTokens(token ->
-                tokenMeetsExpected(currentToken, TOKEN_WHITESPACE)
-                        || tokenMeetsExpected(currentToken, TOKEN_TAB)
-                        || tokenMeetsExpected(currentToken, TOKEN_CARRIAGE_RETURN)
-                        || tokenMeetsExpected(currentToken, TOKEN_LINEFEED)
-        );
-    }
-
-    //Element should return the root (and since it's a recursive structure, all it's children within)
-    // of the XML document.
-    private Element parseElement() throws IllFormedXMLException, EOFXMLException {
-        //two productions possible:
-        // empty tag
-        try {
-            mark();
-            Element el = parseEmptyElemTag();
-            unmark();
-            return el;
-        } catch (IllFormedXMLException e) {
-            //there's no need to report this yet, just revert to the latest known version
-            consumeMark();
-        }
-
-        // STag content ETag
-        parseWhitespace();
-        Element elem = parseSTag();
-        if (_DEBUG)
-            System.err.println("Found STag " + elem.getTagName());
-
-        parseWhitespace(); //these are added because (unlike classic over-the-wire XML) tons of whitespace exists
-        parseContent(elem);
-
-        if (_DEBUG)
-            System.err.println("Parsed STag content succesfully! " + elem.getTagName());
+        return matchOneOrMoreTokens(whitespace);
+    }
 
+    //Element reports the root (and since it's a recursive structure, all it's children within) of the XML document
+    // to the handler. false if there is no element here.
+    //elements that are still open are kept on openElements instead of the call stack, so nesting is bounded by
+    // maxDepth and not by the thread's stack size
+    private boolean parseElement() {
+        //two productions possible, EmptyElemTag and STag content ETag. Both start with '<' Name (S Attribute)* S?,
+        // so that part is parsed once and the tag end decides which production this is
+        openCount = 0;
         parseWhitespace();
+        String name = parseTagStart();
+        if (name == null)
+            return false;
 
-        String name = parseETag();
-
-        if (_DEBUG)
-            System.err.println("Parsed ETag succesfully! " + elem.getTagName());
-
-        parseWhitespace();
+        while (true) {
+            advance();
 
-        if (!elem.getTagName().equals(name))
-            throw new IllFormedXMLException();
+            boolean closed = false;
+            if (tokenMeetsExpected(currentToken, KIND_EMPTY_TAG_END)) {
+                // empty tag
+                handler.startElement(name, attributes);
+                handler.endElement(name);
+                parseWhitespace();
+                closed = true;
+            } else if (tokenMeetsExpected(currentToken, KIND_BIGGER_THAN)) {
+                // STag content ETag
+                if (debug)
+                    System.err.println("Found STag " + name);
+
+                handler.startElement(name, attributes);
+                pushOpenElement(name);
+                parseWhitespace(); //these are added because (unlike classic over-the-wire XML) tons of whitespace exists
+                parseCharData();
+            } else {
+                expected(TOKEN_EMPTY_TAG_END + " or " + TOKEN_BIGGER_THAN);
+                return false;
+            }
 
-        return elem;
-    }
+            //content  ::=  CharData? (element CharData?)*, CharData has already eaten any whitespace, so the next
+            // token either opens a child or closes the innermost open element
+            while (true) {
+                if (closed) {
+                    if (openCount == 0)
+                        return true;
 
-    private Element parseEmptyElemTag() throws IllFormedXMLException, EOFXMLException {
-        parseWhitespace();
+                    parseCharData();
+                }
 
-        advance();
+                int next = peek();
+                if (next == KIND_SMALLER_THAN)
+                    break;
 
-        if (!tokenMeetsExpected(currentToken, TOKEN_SMALLER_THAN)) {
-            reportExpectedTokenError(currentToken, TOKEN_SMALLER_THAN);
-        }
+                if (next != KIND_END_TAG_START) {
+                    advance();
+                    expected(TOKEN_SMALLER_THAN + " or " + TOKEN_END_TAG_START);
+                    return false;
+                }
 
-        String name = parseName();
+                String owner = openElements[--openCount];
+                openElements[openCount] = null;
+                if (!parseETag(owner))
+                    return false;
 
-        //zero or more attributes
-        mark();
-        HashMap<String, String> attributes = parseZeroOrMoreAttributes();
-        if (attributes.size() == 0) {
-            consumeMark();
-        } else {
-            unmark();
-        }
+                if (debug)
+                    System.err.println("Parsed ETag succesfully! " + owner);
 
-        parseWhitespace(); //optional. no need to check if this actually matched
+                handler.endElement(owner);
+                parseWhitespace();
+                closed = true;
+            }
 
-        advance();
+            if (openCount == maxDepth) {
+                advance();
+                expected("at most " + maxDepth + " nested elements");
+                return false;
+            }
 
-        if (!tokenMeetsExpected(currentToken, TOKEN_EMPTY_TAG_END)) {
-            reportExpectedTokenError(currentToken, TOKEN_EMPTY_TAG_END);
+            name = parseTagStart();
+            if (name == null)
+                return false;
         }
+    }
 
-        parseWhitespace();
-
-        return new Element(name, attributes);
+    private void pushOpenElement(String name) {
+        if (openCount == openElements.length)
+            openElements = Arrays.copyOf(openElements, openCount * 2);
+        openElements[openCount++] = name;
     }
 
-    private String parseName() throws IllFormedXMLException, EOFXMLException {
-        mark();
+    //'<' Name (S Attribute)* S?, common prefix of STag and EmptyElemTag. returns the name, the attributes are left
+    // in the attribute list
+    private String parseTagStart() {
         advance();
-        if (!Tokenizer.isLetter(currentToken) &&
-                !tokenMeetsExpected(currentToken, TOKEN_UNDERSCORE) &&
-                !tokenMeetsExpected(currentToken, TOKEN_COLON)) {
-            consumeMark();
-            reportExpectedTokenError(currentToken,
-                    TOKEN_SMALLER_THAN
-                            + " or " + TOKEN_UNDERSCORE
-                            + " or " + R_TOKEN_LETTER
-            );
+
+        if (!tokenMeetsExpected(currentToken, KIND_SMALLER_THAN)) {
+            expected(TOKEN_SMALLER_THAN);
+            return null;
         }
-        unmark();
 
-        StringBuilder b = new StringBuilder();
+        String name = parseName();
+        if (name == null)
+            return null;
 
-        b.append(currentToken);
+        //zero or more attributes, a failed attempt has already been rewound
+        parseZeroOrMoreAttributes();
 
-        while (true) {
-            try {
-                mark();
-                b.append(parseNameChar());
-            } catch (IllFormedXMLException e) {
-                if (b.length() == 1)
-                    throw e;
-                consumeMark();
-                break;
-            }
-            unmark();
-        }
+        parseWhitespace(); //optional. no need to check if this actually matched
 
-        return b.toString();
+        return name;
     }
 
-    private String parseNameChar() throws IllFormedXMLException, EOFXMLException {
+    private String parseName() {
+        //names are lexed as a single run, Name  ::=  (Letter | '_' | ':') (NameChar)*
         advance();
-        if (!Tokenizer.isLetter(currentToken) &&
-                !Tokenizer.isDigit(currentToken) &&
-                !tokenMeetsExpected(currentToken, TOKEN_DOT) &&
-                !tokenMeetsExpected(currentToken, TOKEN_MINUS) &&
-                !tokenMeetsExpected(currentToken, TOKEN_UNDERSCORE) &&
-                !tokenMeetsExpected(currentToken, TOKEN_COLON)) {
-            reportExpectedTokenError(currentToken,
-                    TOKEN_DOT
-                            + " or " + TOKEN_MINUS
-                            + " or " + TOKEN_UNDERSCORE
-                            + " or " + TOKEN_COLON
-                            + " or " + R_TOKEN_LETTER
-                            + " or " + R_TOKEN_DIGIT
+        if (!tokenMeetsExpected(currentToken, KIND_NAME)) {
+            expected(TOKEN_SMALLER_THAN
+                    + " or " + TOKEN_UNDERSCORE
+                    + " or " + R_TOKEN_LETTER
             );
+            return null;
         }
-        return currentToken;
+
+        return toker.getName(toker.getTokenStart(), toker.getTokenEnd());
     }
 
-    private HashMap<String, String> parseZeroOrMoreAttributes() throws EOFXMLException {
-        HashMap<String, String> hm = new HashMap<>(16);
+    private void parseZeroOrMoreAttributes() {
+        attributes.clear();
 
         while (true) {
-            try {
-                mark();
-                parseWhitespace(); // might or might not exist, do not care
-                String[] keyVal = parseAttribute();
-                hm.put(keyVal[0], keyVal[1]);
-                unmark();
-            } catch (IllFormedXMLException e) {
+            mark();
+            //S Attribute, an attribute has to be set apart from the name or the attribute before it
+            if (!parseWhitespace() || !parseAttribute()) {
                 //no problem here!
                 consumeMark();
-                return hm;
+                return;
             }
+            unmark();
         }
     }
 
-    private String[] parseAttribute() throws IllFormedXMLException, EOFXMLException {
+    //only added once it has fully matched, so a rewound attempt leaves nothing behind
+    private boolean parseAttribute() {
         String name = parseName();
+        if (name == null)
+            return false;
 
-        parseEq();
+        if (!parseEq())
+            return false;
 
-        String value = parseAttValue();
+        if (!parseAttValue())
+            return false;
 
-        return new String[]{name, value};
+        if (spanHandler != null)
+            attributes.add(name, toker.getSource(), literalStart, literalEnd);
+        else
+            attributes.add(name, literal);
+        return true;
     }
 
-    private String parseAttValue() throws IllFormedXMLException, EOFXMLException {
+    private boolean parseAttValue() {
         advance();
 
-        StringBuilder b = new StringBuilder();
+        if (tokenMeetsExpected(currentToken, KIND_DOUBLE_QUOTE)) {
+            parseLiteralValue();
+            if (!tokenMeetsExpected(currentToken, KIND_DOUBLE_QUOTE))
+                return expected(TOKEN_DOUBLE_QUOTE);
+            return true;
+        }
 
-        if (tokenMeetsExpected(currentToken, TOKEN_DOUBLE_QUOTE)) {
-            while (true) {
-                try {
-                    mark();
-                    advance();
-                    if (!Tokenizer.isInAttValDQRange(currentToken))
-                        reportExpectedTokenError(currentToken, R_TOKEN_ATTVAL_DQ);
+        if (tokenMeetsExpected(currentToken, KIND_SINGLE_QUOTE)) {
+            parseLiteralValue();
+            if (!tokenMeetsExpected(currentToken, KIND_SINGLE_QUOTE))
+                return expected(TOKEN_SINGLE_QUOTE);
+            return true;
+        }
 
-                    unmark();
+        return expected(TOKEN_DOUBLE_QUOTE + " or " + TOKEN_SINGLE_QUOTE);
+    }
 
-                    b.append(currentToken);
-                } catch (IllFormedXMLException e) {
-                    if (b.length() == 0)
-                        throw e;
-                    consumeMark();
-                    break;
-                }
-            }
+    //([^<&"])* or ([^<&'])*, the lexer stops the run at the closing quote. leaves the token after the value current
+    private void parseLiteralValue() {
+        literalStart = toker.getTokenEnd();
+        literalEnd = literalStart;
 
+        toker.pin(literalStart);
+        advance();
+        while (isCharDataToken(currentToken)) {
+            literalEnd = toker.getTokenEnd();
             advance();
-            if (!tokenMeetsExpected(currentToken, TOKEN_DOUBLE_QUOTE))
-                reportExpectedTokenError(currentToken, TOKEN_DOUBLE_QUOTE);
-
-            return b.toString();
         }
 
-        if (tokenMeetsExpected(currentToken, TOKEN_SINGLE_QUOTE)) {
-            while (true) {
-                try {
-                    mark();
-                    advance();
-                    if (!Tokenizer.isInAttValSQRange(currentToken))
-                        reportExpectedTokenError(currentToken, R_TOKEN_ATTVAL_SQ);
+        literal = spanHandler != null ? null : toker.getValue(literalStart, literalEnd);
+        toker.unpin();
+    }
 
-                    unmark();
-
-                    b.append(currentToken);
-                } catch (IllFormedXMLException e) {
-                    if (b.length() == 0)
-                        throw e;
-                    consumeMark();
-                    break;
-                }
-            }
+    //CharData?, reported if there is any
+    private void parseCharData() {
+        int dataStart = -1;
+        int dataEnd = -1;
 
+        while (true) {
+            mark();
             advance();
-            if (!tokenMeetsExpected(currentToken, TOKEN_SINGLE_QUOTE))
-                reportExpectedTokenError(currentToken, TOKEN_SINGLE_QUOTE);
+            if (!isCharDataToken(currentToken)) {
+                consumeMark();
+                break;
+            }
+            unmark();
 
-            return b.toString();
+            if (dataStart == -1) {
+                dataStart = toker.getTokenStart();
+                toker.pin(dataStart);
+            }
+            dataEnd = toker.getTokenEnd();
         }
 
-        reportExpectedTokenError(currentToken, TOKEN_DOUBLE_QUOTE + " or " + TOKEN_SINGLE_QUOTE);
-        //unreachable code. why does intellij force my hand to return null?
-        return null;
+        if (dataStart != -1) {
+            if (spanHandler != null)
+                spanHandler.characters(dataStart, dataEnd);
+            else
+                handler.characters(toker.getValue(dataStart, dataEnd));
+            toker.unpin();
+        }
     }
 
-    private Element parseSTag() throws IllFormedXMLException, EOFXMLException {
+    private boolean parseETag(String owner) {
         advance();
 
-        if (!tokenMeetsExpected(currentToken, TOKEN_SMALLER_THAN))
-            reportExpectedTokenError(currentToken, TOKEN_SMALLER_THAN);
-
-        String name = parseName();
+        if (!tokenMeetsExpected(currentToken, KIND_END_TAG_START))
+            return expected(TOKEN_END_TAG_START);
 
-        mark();
-        HashMap<String, String> attributes = parseZeroOrMoreAttributes();
-        if (attributes.size() == 0) {
-            consumeMark();
-        } else {
-            unmark();
-        }
+        //must match owner, compared in place
+        advance();
+        if (!tokenIsName(owner))
+            return expected(TOKEN_END_TAG_START + owner + TOKEN_BIGGER_THAN);
 
         parseWhitespace();
 
         advance();
 
-        if (!tokenMeetsExpected(currentToken, TOKEN_BIGGER_THAN))
-            reportExpectedTokenError(currentToken, TOKEN_BIGGER_THAN);
+        if (!tokenMeetsExpected(currentToken, KIND_BIGGER_THAN))
+            return expected(TOKEN_BIGGER_THAN);
 
-        return new Element(name, attributes);
+        return true;
     }
 
-    private void parseContent(Element ogElement) throws IllFormedXMLException {
-        //CharData? (element CharData?)*
-        try {
-            //CharData?
-            String content;
+    //Misc*, ignored in the end result. It's comments and whitespace anyways.
+    private void parseMisc() {
+        while (true) {
+            parseWhitespace();
+            //only a comment that is there can fail, so a missing one doesn't hide the error after it
+            if (peek() != KIND_COMMENT_START)
+                return;
             mark();
-            content = parseCharData();
-            if (content.equals(""))
+            if (!parseComment()) {
                 consumeMark();
-            else {
-                unmark();
-                ogElement.addContent(content);
+                return;
             }
+            unmark();
+        }
+    }
 
-            //if we hit EOF while parsing XML elements, it's over, the doc is ill formed.
-            // catch eof and raise illformed!
-            //  (element CharData?)*
-            while (true) {
-                boolean hasNestedElement = false;
-                //optional element rule
-                try {
-                    mark();
-                    ogElement.insertChild(parseElement());
-                    unmark();
-                    hasNestedElement = true;
-
-                } catch (IllFormedXMLException e) {
-                    //it's entirely possible for an element not to have an element inside it (otherwise
-                    // it'd be an infinite loop). if we do indeed error on this, there's no need to
-                    // terminate. just reset from the last known well state, and continue from there
-                    consumeMark();
-                }
-
-                //if there isn't a nested element (parsing child failed)
-                // there cannot be CharData, and obviously, we've reached the end of our nesting.
-                // then, break
-                if (!hasNestedElement)
-                    break;
+    //Comment  ::=  '<!--' ((Char - '-') | ('-' (Char - '-')))* '-->', the lexer has already checked the body
+    private boolean parseComment() {
+        advance();
+        if (!tokenMeetsExpected(currentToken, KIND_COMMENT_START))
+            return expected(TOKEN_COMMENT_START);
 
+        advance();
+        if (tokenMeetsExpected(currentToken, KIND_CHARDATA))
+            advance();
 
-                //CharData?
-                mark();
-                content = parseCharData();
-                if (content.equals(""))
-                    consumeMark();
-                else {
-                    unmark();
-                    ogElement.addContent(content);
-                }
-            }
-        } catch (EOFXMLException e) {
-            error(toker.getLine(), toker.getColumn(), e.getMessage());
-            throw new IllFormedXMLException("Unexpected EOF");
-        }
+        if (!tokenMeetsExpected(currentToken, KIND_COMMENT_END))
+            return expected(TOKEN_COMMENT_END);
+        return true;
     }
 
-    private String parseCharData() throws EOFXMLException {
-
-        StringBuilder b = new StringBuilder();
+    private boolean matchOneOrMoreTokens(Matcher matcher) {
+        boolean matched = false;
 
         while (true) {
-            try {
-                mark();
-                advance();
-                if (!Tokenizer.isInCharDataRange(currentToken))
-                    reportExpectedTokenError(currentToken, R_TOKEN_CHARDATA);
-
-                unmark();
+            mark();
+            advance();
 
-                b.append(currentToken);
-            } catch (IllFormedXMLException e) {
+            //if it doesn't match, it's probably a valid token for some else rule, so we need to revert it
+            if (!matcher.match(currentToken)) {
                 consumeMark();
-                break;
+                return matched;
             }
-        }
-
-        return b.toString();
 
+            unmark();
+            matched = true;
+        }
     }
 
-    private String parseETag() throws IllFormedXMLException, EOFXMLException {
-        advance();
-
-        if (!tokenMeetsExpected(currentToken, TOKEN_END_TAG_START))
-            reportExpectedTokenError(currentToken, TOKEN_END_TAG_START);
-
-        String name = parseName(); //must match owner
-
-        parseWhitespace();
-
+    //the kind of the next token, without consuming it
+    private int peek() {
+        mark();
         advance();
-
-        if (!tokenMeetsExpected(currentToken, TOKEN_BIGGER_THAN))
-            reportExpectedTokenError(currentToken, TOKEN_BIGGER_THAN);
-
-        return name;
+        int next = currentToken;
+        consumeMark();
+        return next;
     }
 
-    //this will probably be ignored in the end result. It's comments and whitespace anyways.
-    private void parseMisc() {
-        //comments are removed automatically by the tokenizer
-        parseWhitespace();
+    private boolean tokenMeetsExpected(int tok, int expected) {
+        return tok == expected;
     }
 
-    private boolean matchOneOrMoreTokens(Matcher matcher) {
-        mark();
-        boolean raisedException = false;
-        try {
-            mark();
-            advance();
-            boolean matched = matcher.match(currentToken);
-
-            //if it's not whitespace, it's probably a valid token for some else rule, so we need to revert it
-            if (!matched) {
-                consumeMark();
-                return false;
-            }
+    //keywords are plain names to the lexer, they are told apart in place without materializing the token
+    private boolean tokenIsName(String keyword) {
+        return currentToken == KIND_NAME && toker.tokenEquals(keyword);
+    }
 
-            int markCount = 1;
-            while (matched) {
-                mark();
-                ++markCount;
+    private boolean tokenIsCharData(String literal) {
+        return currentToken == KIND_CHARDATA && toker.tokenEquals(literal);
+    }
 
-                advance();
-                matched = matcher.match(currentToken);
-            }
+    //[^<&]: character data runs. whatever the lexer couldn't classify ('&', a stray '<!--') ends the run, and the
+    // rule after it fails on it
+    private boolean isCharDataToken(int tok) {
+        return tok == KIND_CHARDATA
+                || tok == KIND_WHITESPACE;
+    }
 
-            //revert the last tok, and "null" the rest marks.
-            // last tok is probably the next token for the next rule
-            consumeMark();
-            for (int i = 1; i < markCount; i++) {
-                unmark();
-            }
+    @Override
+    public void reset(InputSource source) {
+        toker.reset(source);
+        tokStack.reset();
+        failure.reset();
+        attributes.clear();
+        Arrays.fill(openElements, 0, openCount, null);
+        openCount = 0;
+        currentToken = KIND_ERROR;
+    }
 
-            return true;
-        } catch (EOFXMLException e) {
-            raisedException = true;
-            consumeMark();
-        } finally {
-            if (!raisedException)
-                unmark();
-        }
+    //shared with the tokenizer
+    @Override
+    public void setDebug(boolean debug) {
+        this.debug = debug;
+        toker.setDebug(debug);
+    }
 
-        return false;
+    @Override
+    public void setMaxDepth(int maxDepth) {
+        if (maxDepth < 1)
+            throw new IllegalArgumentException("maxDepth must be at least 1, got " + maxDepth);
+        this.maxDepth = maxDepth;
     }
 
-    private boolean tokenMeetsExpected(@NotNull String tok, @NotNull String expected) {
-        return tok.equals(expected);
+    //null if the events went to a handler of the caller's
+    @Override
+    public XMLDocument getDocument() {
+        return treeBuilder == null ? null : treeBuilder.getDocument();
     }
 
-    public void printResultingTree() {
-        System.out.println("\"" + toker.getFilename() + "\"" + " XML Document Version " + xmlDocument.getVersion() +
-                ",Standalone " + (xmlDocument.getStandalone() ? "yes" : "no") + ",Encoding " +
-                xmlDocument.getEncoding() + ",Structure:");
-        xmlDocument.getRoot().printSelfAndChildren("\t");
+    @Override
+    public String getFilename() {
+        return toker.getFilename();
     }
 
     /**
      * this method, in use with mark/consume methods, provide a handy way
-     * to go back and forth on already parsed tokens.
+     * to go back and forth on already parsed tokens. EOF is just another token that no rule accepts.
      **/
-    private void advance() throws EOFXMLException {
+    private void advance() {
         currentToken = toker.next();
-        tokStack.addTok(currentToken);
-
-        if (currentToken.equals(TOKEN_EOF))
-            throw new EOFXMLException();
+        if (debug)
+            tokStack.addTok(currentToken, toker.hasMark());
     }
 
     /**
      * There used to be a revert() method here; but it turned out to be hellish to keep track of what is reverted
-     * and where, and how it should be. In retrospect, it could be done that way; but I really don't want to deal with
-     * radically inconsistent state between tokenstack and tokenizer between different calls.
+     * and where, and how it should be. The tokenizer's token window is now the only thing that is rewound; the token
+     * stack is told where it ended up, and only when debugging.
      **/
 
     @Override
     public void mark() {
-        tokStack.mark();
+        if (debug)
+            tokStack.printMark(toker.getMarkDepth());
         toker.mark();
     }
 
     @Override
     public boolean hasMark() {
-        return tokStack.hasMark() || toker.hasMark();
+        return toker.hasMark();
     }
 
     /**
-     * Consumes the mark, and returns the token arraylist to it's original state. Pos argument defines the
-     * token index to start again from.
+     * Consumes the mark, and returns the tokenizer to the token it was at when the mark was made.
      **/
     @Override
     public void consumeMark() {
-        tokStack.consumeMark();
+        if (debug)
+            tokStack.printConsumeMark(toker.getMarkDepth() - 1);
         toker.consumeMark();
+        if (debug) {
+            tokStack.rewind(toker.getTokenIndex());
+            tokStack.printRewound();
+        }
     }
 
     /**
      * Voids the mark
      **/
     public void unmark() {
-        tokStack.unmark();
         toker.unmark();
     }
 
-    private void reportExpectedTokenError(String tok, String expected) throws IllFormedXMLException {
-        if (_DEBUG)
-            error(toker.getLine(), toker.getColumn(), "Expected " + expected + ", got " +
-                    tok + "\n " + Arrays.toString(Thread.currentThread().getStackTrace()).replace(',', '\n'));
-        //revert();
-        throw new IllFormedXMLException();
+    /**
+     * Notes that the current token isn't what the rule expected and returns false, so rules can
+     * {@code return expected(...)}. Nothing is thrown; the caller decides whether to rewind or give up.
+     */
+    private boolean expected(String expected) {
+        failure.record(toker.getTokenLine(), toker.getTokenColumn(), currentToken, expected);
+        if (debug)
+            error(toker.getTokenLine(), toker.getTokenColumn(), "Expected " + expected + ", got " +
+                    describe(currentToken) + "\n " +
+                    Arrays.toString(Thread.currentThread().getStackTrace()).replace(',', '\n'));
+        return false;
     }
 
     private void error(int line, int column, String message) {
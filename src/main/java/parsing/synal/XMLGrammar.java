@@ -0,0 +1,241 @@
+package parsing.synal;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import static parsing.XMLToken.*;
+
+/**
+ * The grammar of grammar-stuff/simple_xml_grammar.txt as LL(1) productions over the lexer's tokens, and the parse
+ * table computed from them (FIRST/FOLLOW) when the class loads. A conflict there is a bug in the grammar, so it fails
+ * loudly. Action symbols mark where a driver has to do something with what it just matched; what that is, is up to
+ * the driver ({@link TableDrivenAutomata}, {@link XMLPullParser}).
+ */
+final class XMLGrammar {
+    //symbols: token kinds are the terminals, then the nonterminals, then the actions
+    static final int NT_BASE = KIND_COUNT;
+    static final int DOCUMENT = NT_BASE;
+    static final int PROLOG_REST = NT_BASE + 1;
+    static final int XML_DECL = NT_BASE + 2;
+    static final int XML_DECL_TAIL = NT_BASE + 3;
+    static final int SD_DECL_OPT = NT_BASE + 4;
+    static final int OPT_WS = NT_BASE + 5;
+    static final int EQ = NT_BASE + 6;
+    static final int LITERAL = NT_BASE + 7;
+    static final int LITERAL_BODY = NT_BASE + 8;
+    static final int ELEMENT = NT_BASE + 9;
+    static final int ATTRIBUTES = NT_BASE + 10;
+    static final int ATTRIBUTE_OPT = NT_BASE + 11;
+    static final int TAG_END = NT_BASE + 12;
+    static final int CONTENT = NT_BASE + 13;
+    static final int MISC = NT_BASE + 14;
+    static final int COMMENT = NT_BASE + 15;
+    static final int COMMENT_BODY = NT_BASE + 16;
+    static final int NT_COUNT = 17;
+    static final String[] NT_NAMES = {
+            "document", "prolog", "XMLDecl", "XMLDecl tail", "SDDecl", "S?", "Eq", "AttValue", "literal",
+            "element", "attributes", "attribute", "tag end", "content", "Misc", "Comment", "comment"
+    };
+
+    static final int ACTION_BASE = NT_BASE + NT_COUNT;
+    static final int A_VERSION_KEYWORD = ACTION_BASE;
+    static final int A_VERSION = ACTION_BASE + 1;
+    static final int A_STANDALONE_KEYWORD = ACTION_BASE + 2;
+    static final int A_STANDALONE = ACTION_BASE + 3;
+    static final int A_LITERAL_OPEN = ACTION_BASE + 4;
+    static final int A_LITERAL_CLOSE = ACTION_BASE + 5;
+    static final int A_START_TAG = ACTION_BASE + 6;
+    static final int A_ATTRIBUTE_NAME = ACTION_BASE + 7;
+    static final int A_ATTRIBUTE_VALUE = ACTION_BASE + 8;
+    static final int A_EMPTY_ELEMENT = ACTION_BASE + 9;
+    static final int A_OPEN_ELEMENT = ACTION_BASE + 10;
+    static final int A_END_TAG = ACTION_BASE + 11;
+    static final int A_TEXT = ACTION_BASE + 12;
+    static final int A_XML_DECL = ACTION_BASE + 13;
+
+    private static final int[] PRODUCTION_LHS;
+    static final int[][] PRODUCTIONS;
+    //TABLE[nonterminal][lookahead kind] is a production index, or -1
+    static final int[][] TABLE;
+
+    static {
+        ArrayList<int[]> rules = new ArrayList<>();
+
+        //document  ::=  prolog element Misc*, prolog  ::=  XMLDecl? Misc*. whitespace before the XMLDecl is let
+        // through, so a prolog without one that starts with whitespace has already had it read
+        rule(rules, DOCUMENT, OPT_WS, PROLOG_REST);
+        rule(rules, PROLOG_REST, XML_DECL, MISC, ELEMENT, MISC, KIND_EOF);
+        rule(rules, PROLOG_REST, COMMENT, MISC, ELEMENT, MISC, KIND_EOF);
+        rule(rules, PROLOG_REST, ELEMENT, MISC, KIND_EOF);
+        //Misc  ::=  Comment | S
+        rule(rules, MISC, KIND_WHITESPACE, MISC);
+        rule(rules, MISC, COMMENT, MISC);
+        rule(rules, MISC);
+        //Comment  ::=  '<!--' ((Char - '-') | ('-' (Char - '-')))* '-->', the lexer makes the body a single run
+        rule(rules, COMMENT, KIND_COMMENT_START, COMMENT_BODY, KIND_COMMENT_END);
+        rule(rules, COMMENT_BODY, KIND_CHARDATA);
+        rule(rules, COMMENT_BODY);
+        //XMLDecl  ::=  '<?xml' VersionInfo SDDecl? S? '?>', factored on the whitespace SDDecl and S? share
+        rule(rules, XML_DECL, KIND_XML_DECL_START, KIND_WHITESPACE, KIND_NAME, A_VERSION_KEYWORD, EQ, LITERAL,
+                A_VERSION, XML_DECL_TAIL, A_XML_DECL);
+        rule(rules, XML_DECL_TAIL, KIND_WHITESPACE, SD_DECL_OPT);
+        rule(rules, XML_DECL_TAIL, KIND_XML_DECL_END);
+        rule(rules, SD_DECL_OPT, KIND_NAME, A_STANDALONE_KEYWORD, EQ, LITERAL, A_STANDALONE, OPT_WS,
+                KIND_XML_DECL_END);
+        rule(rules, SD_DECL_OPT, KIND_XML_DECL_END);
+        //S? is a single token, the lexer joins whitespace runs
+        rule(rules, OPT_WS, KIND_WHITESPACE);
+        rule(rules, OPT_WS);
+        //Eq  ::=  S? '=' S?
+        rule(rules, EQ, OPT_WS, KIND_EQUALS, OPT_WS);
+        //AttValue  ::=  '"' ([^<&"])* '"' |  "'" ([^<&'])* "'", also used for VersionNum and yes/no
+        rule(rules, LITERAL, KIND_DOUBLE_QUOTE, A_LITERAL_OPEN, LITERAL_BODY, KIND_DOUBLE_QUOTE, A_LITERAL_CLOSE);
+        rule(rules, LITERAL, KIND_SINGLE_QUOTE, A_LITERAL_OPEN, LITERAL_BODY, KIND_SINGLE_QUOTE, A_LITERAL_CLOSE);
+        rule(rules, LITERAL_BODY, KIND_CHARDATA, LITERAL_BODY);
+        rule(rules, LITERAL_BODY);
+        //element  ::=  EmptyElemTag | STag content ETag, factored on '<' Name (S Attribute)* S?
+        rule(rules, ELEMENT, KIND_SMALLER_THAN, KIND_NAME, A_START_TAG, ATTRIBUTES, TAG_END);
+        rule(rules, ATTRIBUTES, KIND_WHITESPACE, ATTRIBUTE_OPT);
+        rule(rules, ATTRIBUTES);
+        rule(rules, ATTRIBUTE_OPT, KIND_NAME, A_ATTRIBUTE_NAME, EQ, LITERAL, A_ATTRIBUTE_VALUE, ATTRIBUTES);
+        rule(rules, ATTRIBUTE_OPT);
+        rule(rules, TAG_END, KIND_EMPTY_TAG_END, A_EMPTY_ELEMENT);
+        rule(rules, TAG_END, KIND_BIGGER_THAN, A_OPEN_ELEMENT, CONTENT, KIND_END_TAG_START, KIND_NAME, A_END_TAG,
+                OPT_WS, KIND_BIGGER_THAN);
+        //content  ::=  CharData? (element CharData?)*, CharData being any run of text tokens. '&' and anything else
+        // the lexer couldn't classify is an error
+        rule(rules, CONTENT, KIND_CHARDATA, A_TEXT, CONTENT);
+        rule(rules, CONTENT, KIND_WHITESPACE, A_TEXT, CONTENT);
+        rule(rules, CONTENT, ELEMENT, CONTENT);
+        rule(rules, CONTENT);
+
+        PRODUCTION_LHS = new int[rules.size()];
+        PRODUCTIONS = new int[rules.size()][];
+        for (int i = 0; i < rules.size(); i++) {
+            int[] rule = rules.get(i);
+            PRODUCTION_LHS[i] = rule[0];
+            PRODUCTIONS[i] = Arrays.copyOfRange(rule, 1, rule.length);
+        }
+        TABLE = buildTable();
+    }
+
+    private static void rule(ArrayList<int[]> rules, int lhs, int... rhs) {
+        int[] rule = new int[rhs.length + 1];
+        rule[0] = lhs;
+        System.arraycopy(rhs, 0, rule, 1, rhs.length);
+        rules.add(rule);
+    }
+
+    static boolean isTerminal(int symbol) {
+        return symbol < NT_BASE;
+    }
+
+    static boolean isNonTerminal(int symbol) {
+        return symbol >= NT_BASE && symbol < ACTION_BASE;
+    }
+
+    private static int[][] buildTable() {
+        boolean[] nullable = new boolean[NT_COUNT];
+        boolean[][] first = new boolean[NT_COUNT][KIND_COUNT];
+        boolean[][] follow = new boolean[NT_COUNT][KIND_COUNT];
+
+        //FIRST and nullable, to a fixed point
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (int p = 0; p < PRODUCTIONS.length; p++) {
+                int lhs = PRODUCTION_LHS[p] - NT_BASE;
+                boolean[] seqFirst = new boolean[KIND_COUNT];
+                boolean seqNullable = firstOfSequence(PRODUCTIONS[p], 0, nullable, first, seqFirst);
+                changed |= union(first[lhs], seqFirst);
+                if (seqNullable && !nullable[lhs]) {
+                    nullable[lhs] = true;
+                    changed = true;
+                }
+            }
+        }
+
+        //FOLLOW, document is followed by nothing; it ends in EOF itself
+        changed = true;
+        while (changed) {
+            changed = false;
+            for (int p = 0; p < PRODUCTIONS.length; p++) {
+                int[] rhs = PRODUCTIONS[p];
+                for (int i = 0; i < rhs.length; i++) {
+                    if (!isNonTerminal(rhs[i]))
+                        continue;
+                    boolean[] restFirst = new boolean[KIND_COUNT];
+                    boolean restNullable = firstOfSequence(rhs, i + 1, nullable, first, restFirst);
+                    changed |= union(follow[rhs[i] - NT_BASE], restFirst);
+                    if (restNullable)
+                        changed |= union(follow[rhs[i] - NT_BASE], follow[PRODUCTION_LHS[p] - NT_BASE]);
+                }
+            }
+        }
+
+        int[][] table = new int[NT_COUNT][KIND_COUNT];
+        for (int[] row : table)
+            Arrays.fill(row, -1);
+        for (int p = 0; p < PRODUCTIONS.length; p++) {
+            int lhs = PRODUCTION_LHS[p] - NT_BASE;
+            boolean[] predict = new boolean[KIND_COUNT];
+            if (firstOfSequence(PRODUCTIONS[p], 0, nullable, first, predict))
+                union(predict, follow[lhs]);
+            for (int kind = 0; kind < KIND_COUNT; kind++) {
+                if (!predict[kind])
+                    continue;
+                if (table[lhs][kind] != -1)
+                    throw new IllegalStateException("Grammar is not LL(1): " + NT_NAMES[lhs] + " on " +
+                            describe(kind) + " predicts productions " + table[lhs][kind] + " and " + p);
+                table[lhs][kind] = p;
+            }
+        }
+        return table;
+    }
+
+    //FIRST of rhs[from..], into out. returns whether all of it can derive the empty string. actions are transparent
+    private static boolean firstOfSequence(int[] rhs, int from, boolean[] nullable, boolean[][] first,
+                                           boolean[] out) {
+        for (int i = from; i < rhs.length; i++) {
+            int symbol = rhs[i];
+            if (isTerminal(symbol)) {
+                out[symbol] = true;
+                return false;
+            }
+            if (isNonTerminal(symbol)) {
+                union(out, first[symbol - NT_BASE]);
+                if (!nullable[symbol - NT_BASE])
+                    return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean union(boolean[] into, boolean[] from) {
+        boolean changed = false;
+        for (int i = 0; i < into.length; i++) {
+            if (from[i] && !into[i]) {
+                into[i] = true;
+                changed = true;
+            }
+        }
+        return changed;
+    }
+
+    //the lookaheads the table has a production for, only built once the parse has failed
+    static String expectedAt(int nonTerminal) {
+        StringBuilder sb = new StringBuilder();
+        int[] row = TABLE[nonTerminal - NT_BASE];
+        for (int kind = 0; kind < KIND_COUNT; kind++) {
+            if (row[kind] == -1)
+                continue;
+            if (sb.length() > 0)
+                sb.append(" or ");
+            sb.append(describe(kind));
+        }
+        return sb.toString();
+    }
+
+    private XMLGrammar() {
+    }
+}
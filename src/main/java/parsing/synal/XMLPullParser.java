@@ -0,0 +1,400 @@
+package parsing.synal;
+
+import io.InputSource;
+import parsing.exceptions.IllFormedXMLException;
+import parsing.lexer.Tokenizer;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+
+import static parsing.XMLToken.*;
+import static parsing.synal.XMLGrammar.*;
+
+/**
+ * Pull parser: the caller asks for the next event instead of being called back, so it can stop early, skip whole
+ * elements, or interleave several documents on one thread. It is driven by the same {@link XMLGrammar} tables as
+ * {@link TableDrivenAutomata}, stepping the symbol stack only until the next event is ready.
+ * <p>
+ * Names, attributes and text are kept as spans of the input and only decoded when asked for, so {@link #next()}
+ * allocates nothing. {@link #nameEquals(String)} compares the current name in place. The names of the open elements
+ * are copied aside, so on a streaming source only the current event's bytes are held back.
+ * </p>
+ */
+public class XMLPullParser {
+    public static final int START_DOCUMENT = 0;
+    public static final int START_ELEMENT = 1;
+    public static final int CHARACTERS = 2;
+    public static final int END_ELEMENT = 3;
+    public static final int END_DOCUMENT = 4;
+    private static final int NO_EVENT = -1;
+
+    private final Tokenizer toker;
+    private int[] stack = new int[64];
+    private int stackSize = 0;
+    private int lookahead;
+    private int eventType = START_DOCUMENT;
+    //an event that is already known to follow the current one, e.g. the END_ELEMENT of an empty element
+    private int pendingEvent = NO_EVENT;
+
+    //names of the elements that are still open, back to back in openNames, each ending at openEnds[i]
+    private byte[] openNames = new byte[256];
+    private int[] openEnds = new int[16];
+    private int openCount = 0;
+    private int maxDepth = XMLAutomata.DEFAULT_MAX_DEPTH;
+
+    //name of the current START_ELEMENT or END_ELEMENT
+    private int nameStart;
+    private int nameEnd;
+    //attributes of the current START_ELEMENT, as name and value spans
+    private int[] attributeSpans = new int[4 * 8];
+    private int attributeCount = 0;
+    private int attributeNameStart;
+    private int attributeNameEnd;
+    //text of the current CHARACTERS event, and the run that is still being read
+    private int eventTextStart;
+    private int eventTextEnd;
+    private int textStart = -1;
+    private int textEnd = -1;
+
+    private int lastKind;
+    private int lastStart;
+    private int lastEnd;
+    private int lastLine;
+    private int lastColumn;
+    private int literalStart;
+    private int literalEnd;
+    private String version = "";
+    private boolean standalone = true;
+
+    public XMLPullParser(Tokenizer toker) {
+        this.toker = toker;
+        start();
+    }
+
+    /**
+     * Starts over on a new input, at START_DOCUMENT, keeping the stacks grown so far.
+     */
+    public void reset(InputSource source) {
+        toker.reset(source);
+        stackSize = 0;
+        eventType = START_DOCUMENT;
+        pendingEvent = NO_EVENT;
+        openCount = 0;
+        attributeCount = 0;
+        textStart = -1;
+        version = "";
+        standalone = true;
+        start();
+    }
+
+    private void start() {
+        push(DOCUMENT);
+        lookahead = toker.next();
+    }
+
+    public void setMaxDepth(int maxDepth) {
+        if (maxDepth < 1)
+            throw new IllegalArgumentException("maxDepth must be at least 1, got " + maxDepth);
+        this.maxDepth = maxDepth;
+    }
+
+    public boolean hasNext() {
+        return eventType != END_DOCUMENT;
+    }
+
+    /**
+     * Reads up to the next event and returns its type.
+     */
+    public int next() throws IllFormedXMLException {
+        if (pendingEvent != NO_EVENT) {
+            eventType = pendingEvent;
+            pendingEvent = NO_EVENT;
+            return eventType;
+        }
+        if (eventType == END_DOCUMENT)
+            throw new NoSuchElementException("Already at the end of " + toker.getFilename());
+
+        while (stackSize > 0) {
+            int symbol = stack[--stackSize];
+
+            if (isTerminal(symbol)) {
+                if (symbol != lookahead)
+                    throw unexpected(describe(symbol));
+                lastKind = lookahead;
+                lastStart = toker.getTokenStart();
+                lastEnd = toker.getTokenEnd();
+                lastLine = toker.getTokenLine();
+                lastColumn = toker.getTokenColumn();
+                if (lookahead != KIND_EOF)
+                    lookahead = toker.next();
+            } else if (isNonTerminal(symbol)) {
+                int production = TABLE[symbol - NT_BASE][lookahead];
+                if (production == -1)
+                    throw unexpected(expectedAt(symbol));
+                int[] rhs = PRODUCTIONS[production];
+                for (int i = rhs.length - 1; i >= 0; i--)
+                    push(rhs[i]);
+            } else {
+                int event = act(symbol);
+                if (event != NO_EVENT) {
+                    eventType = event;
+                    //from here on only this event's spans are read
+                    toker.pin(event == CHARACTERS ? eventTextStart : nameStart);
+                    return event;
+                }
+            }
+        }
+
+        eventType = END_DOCUMENT;
+        toker.unpin();
+        return eventType;
+    }
+
+    /**
+     * Skips the rest of the element the cursor is at the START_ELEMENT of, and leaves the cursor at its END_ELEMENT.
+     * Skipped content is still checked, but nothing in it is decoded.
+     */
+    public void skipElement() throws IllFormedXMLException {
+        requireEvent(START_ELEMENT);
+
+        int level = 1;
+        while (level > 0) {
+            int event = next();
+            if (event == START_ELEMENT)
+                ++level;
+            else if (event == END_ELEMENT)
+                --level;
+        }
+    }
+
+    public int getEventType() {
+        return eventType;
+    }
+
+    public String getLocalName() {
+        requireName();
+        return toker.getName(nameStart, nameEnd);
+    }
+
+    public boolean nameEquals(String name) {
+        requireName();
+        return toker.textEquals(nameStart, nameEnd, name);
+    }
+
+    public int getAttributeCount() {
+        requireEvent(START_ELEMENT);
+        return attributeCount;
+    }
+
+    public String getAttributeLocalName(int index) {
+        int slot = attributeSlot(index);
+        return toker.getName(attributeSpans[slot], attributeSpans[slot + 1]);
+    }
+
+    public String getAttributeValue(int index) {
+        int slot = attributeSlot(index);
+        return toker.getValue(attributeSpans[slot + 2], attributeSpans[slot + 3]);
+    }
+
+    //null if the current element has no such attribute
+    public String getAttributeValue(String name) {
+        requireEvent(START_ELEMENT);
+        for (int slot = 0; slot < attributeCount * 4; slot += 4) {
+            if (toker.textEquals(attributeSpans[slot], attributeSpans[slot + 1], name))
+                return toker.getValue(attributeSpans[slot + 2], attributeSpans[slot + 3]);
+        }
+        return null;
+    }
+
+    public String getText() {
+        requireEvent(CHARACTERS);
+        return toker.getValue(eventTextStart, eventTextEnd);
+    }
+
+    //"" until an XMLDecl has been read
+    public String getVersion() {
+        return version;
+    }
+
+    public boolean isStandalone() {
+        return standalone;
+    }
+
+    public String getFilename() {
+        return toker.getFilename();
+    }
+
+    //runs an action symbol, returns the event it completes or NO_EVENT
+    private int act(int action) throws IllFormedXMLException {
+        switch (action) {
+            case A_VERSION_KEYWORD:
+                expectLast(TOKEN_VERSION_KEYWORD);
+                return NO_EVENT;
+            case A_VERSION:
+                if (!toker.textEquals(literalStart, literalEnd, TOKEN_VERSION_1_0))
+                    throw unexpectedLiteral(TOKEN_VERSION_1_0);
+                version = TOKEN_VERSION_1_0;
+                return NO_EVENT;
+            case A_STANDALONE_KEYWORD:
+                expectLast(TOKEN_STANDALONE_KEYWORD);
+                return NO_EVENT;
+            case A_STANDALONE:
+                if (toker.textEquals(literalStart, literalEnd, TOKEN_YES_KEYWORD))
+                    standalone = true;
+                else if (toker.textEquals(literalStart, literalEnd, TOKEN_NO_KEYWORD))
+                    standalone = false;
+                else
+                    throw unexpectedLiteral(TOKEN_YES_KEYWORD + " or " + TOKEN_NO_KEYWORD);
+                return NO_EVENT;
+            case A_XML_DECL:
+                return NO_EVENT;
+            case A_LITERAL_OPEN:
+                literalStart = lastEnd;
+                return NO_EVENT;
+            case A_LITERAL_CLOSE:
+                literalEnd = lastStart;
+                return NO_EVENT;
+            case A_START_TAG:
+                if (openCount == maxDepth)
+                    throw new IllFormedXMLException(lastLine, lastColumn, "at most " + maxDepth + " nested elements",
+                            describe(lastKind));
+                nameStart = lastStart;
+                nameEnd = lastEnd;
+                attributeCount = 0;
+                //text before a child element is reported before it
+                return flushText() ? CHARACTERS : NO_EVENT;
+            case A_ATTRIBUTE_NAME:
+                attributeNameStart = lastStart;
+                attributeNameEnd = lastEnd;
+                return NO_EVENT;
+            case A_ATTRIBUTE_VALUE:
+                addAttribute();
+                return NO_EVENT;
+            case A_EMPTY_ELEMENT:
+                pendingEvent = END_ELEMENT;
+                return START_ELEMENT;
+            case A_OPEN_ELEMENT:
+                pushOpenName();
+                return START_ELEMENT;
+            case A_END_TAG:
+                --openCount;
+                if (!openNameEquals(lastStart, lastEnd))
+                    throw new IllFormedXMLException(lastLine, lastColumn, TOKEN_END_TAG_START + openName() +
+                            TOKEN_BIGGER_THAN, describe(lastKind));
+                //same bytes as the start tag's name
+                nameStart = lastStart;
+                nameEnd = lastEnd;
+                if (flushText()) {
+                    pendingEvent = END_ELEMENT;
+                    return CHARACTERS;
+                }
+                return END_ELEMENT;
+            case A_TEXT:
+                //whitespace only continues a run, so whitespace on its own or before the text is dropped
+                if (lastKind != KIND_WHITESPACE && textStart == -1)
+                    textStart = lastStart;
+                if (textStart != -1)
+                    textEnd = lastEnd;
+                return NO_EVENT;
+            default:
+                throw new IllegalStateException("Unknown action " + action);
+        }
+    }
+
+    //a repeated attribute name keeps the last value
+    private void addAttribute() {
+        int slot = 0;
+        while (slot < attributeCount * 4
+                && !toker.textEquals(attributeSpans[slot], attributeSpans[slot + 1], attributeNameStart,
+                attributeNameEnd))
+            slot += 4;
+
+        if (slot == attributeCount * 4) {
+            if (slot == attributeSpans.length)
+                attributeSpans = Arrays.copyOf(attributeSpans, slot * 2);
+            attributeSpans[slot] = attributeNameStart;
+            attributeSpans[slot + 1] = attributeNameEnd;
+            ++attributeCount;
+        }
+        attributeSpans[slot + 2] = literalStart;
+        attributeSpans[slot + 3] = literalEnd;
+    }
+
+    private void pushOpenName() {
+        int from = openCount == 0 ? 0 : openEnds[openCount - 1];
+        int to = from + nameEnd - nameStart;
+        if (to > openNames.length)
+            openNames = Arrays.copyOf(openNames, Math.max(to, openNames.length * 2));
+        for (int i = nameStart; i < nameEnd; i++)
+            openNames[from + i - nameStart] = (byte) toker.byteAt(i);
+
+        if (openCount == openEnds.length)
+            openEnds = Arrays.copyOf(openEnds, openCount * 2);
+        openEnds[openCount++] = to;
+    }
+
+    //compares a span against the name of the element that was just closed, at openCount
+    private boolean openNameEquals(int start, int end) {
+        int from = openCount == 0 ? 0 : openEnds[openCount - 1];
+        if (end - start != openEnds[openCount] - from)
+            return false;
+        for (int i = start; i < end; i++) {
+            if (openNames[from + i - start] != (byte) toker.byteAt(i))
+                return false;
+        }
+        return true;
+    }
+
+    private String openName() {
+        int from = openCount == 0 ? 0 : openEnds[openCount - 1];
+        return new String(openNames, from, openEnds[openCount] - from, StandardCharsets.UTF_8);
+    }
+
+    //turns the run read so far into the CHARACTERS event, if there is one
+    private boolean flushText() {
+        if (textStart == -1)
+            return false;
+        eventTextStart = textStart;
+        eventTextEnd = textEnd;
+        textStart = -1;
+        return true;
+    }
+
+    private int attributeSlot(int index) {
+        requireEvent(START_ELEMENT);
+        if (index < 0 || index >= attributeCount)
+            throw new IndexOutOfBoundsException("Attribute " + index + " of " + attributeCount);
+        return index * 4;
+    }
+
+    private void requireEvent(int expected) {
+        if (eventType != expected)
+            throw new IllegalStateException("Not available at event " + eventType);
+    }
+
+    private void requireName() {
+        if (eventType != START_ELEMENT && eventType != END_ELEMENT)
+            throw new IllegalStateException("Not available at event " + eventType);
+    }
+
+    private void push(int symbol) {
+        if (stackSize == stack.length)
+            stack = Arrays.copyOf(stack, stackSize * 2);
+        stack[stackSize++] = symbol;
+    }
+
+    private void expectLast(String keyword) throws IllFormedXMLException {
+        if (!toker.textEquals(lastStart, lastEnd, keyword))
+            throw new IllFormedXMLException(lastLine, lastColumn, keyword, describe(lastKind));
+    }
+
+    private IllFormedXMLException unexpectedLiteral(String expected) {
+        return new IllFormedXMLException(lastLine, lastColumn, expected,
+                "\"" + toker.getText(literalStart, literalEnd) + "\"");
+    }
+
+    private IllFormedXMLException unexpected(String expected) {
+        return new IllFormedXMLException(toker.getTokenLine(), toker.getTokenColumn(), expected, describe(lookahead));
+    }
+}
@@ -0,0 +1,211 @@
+package parsing.datastructs;
+
+import io.CharSequenceSource;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import parsing.exceptions.IllFormedXMLException;
+import parsing.synal.Parsers;
+import parsing.synal.XMLAutomata;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class BinaryDocumentTest {
+    private static final String XML = "<?xml version=\"1.0\" standalone=\"no\"?>\n" +
+            "<root a=\"1\" b='é'>text<child x=\"y\">inner</child>tail<empty/></root>";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static XMLDocument parse(String xml) throws IllFormedXMLException {
+        XMLAutomata parser = Parsers.descent(new CharSequenceSource(xml, "test"));
+        parser.parse();
+        return parser.getDocument();
+    }
+
+    private static byte[] write(XMLDocument document) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new BinaryDocumentWriter(1, 2, 3).write(document, out);
+        return out.toByteArray();
+    }
+
+    private static String print(XMLDocument document) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        TreePrinter printer = new TreePrinter(sb);
+        printer.print(document.getRoot());
+        printer.flush();
+        return sb.toString();
+    }
+
+    private static String print(NodeDocument document) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        TreePrinter printer = new TreePrinter(sb);
+        printer.print(document, document.getRoot());
+        printer.flush();
+        return sb.toString();
+    }
+
+    private static void assertCorrupt(byte[] bytes) {
+        try {
+            new BinaryDocument(ByteBuffer.wrap(bytes));
+            fail("corrupt binary document opened");
+        } catch (IOException expected) {
+        }
+    }
+
+    @Test
+    public void roundTrip() throws Exception {
+        XMLDocument document = parse(XML);
+        BinaryDocument binary = new BinaryDocument(ByteBuffer.wrap(write(document)));
+
+        assertEquals(1, binary.getSourceSize());
+        assertEquals(2, binary.getSourceModified());
+        assertEquals(3, binary.getSourceHash());
+        assertEquals("1.0", binary.getVersion());
+        assertFalse(binary.getStandalone());
+        assertEquals(print(document), print(binary));
+    }
+
+    @Test
+    public void corruptHeaderIsAnIOException() throws Exception {
+        byte[] bytes = write(parse(XML));
+
+        byte[] negativeVersion = bytes.clone();
+        ByteBuffer.wrap(negativeVersion).putInt(56, -1);
+        assertCorrupt(negativeVersion);
+
+        byte[] hugeVersion = bytes.clone();
+        ByteBuffer.wrap(hugeVersion).putInt(56, Integer.MAX_VALUE);
+        assertCorrupt(hugeVersion);
+
+        byte[] negativeCount = bytes.clone();
+        ByteBuffer.wrap(negativeCount).putInt(44, -3);
+        assertCorrupt(negativeCount);
+
+        byte[] hugeCount = bytes.clone();
+        ByteBuffer.wrap(hugeCount).putInt(48, Integer.MAX_VALUE);
+        assertCorrupt(hugeCount);
+
+        assertCorrupt(Arrays.copyOf(bytes, bytes.length - 1));
+        assertCorrupt(Arrays.copyOf(bytes, 20));
+    }
+
+    @Test
+    public void nameIdOutOfRangeIsCaught() throws Exception {
+        byte[] bytes = write(parse(XML));
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        int nameCount = buffer.getInt(36);
+        int valueCount = buffer.getInt(40);
+        int nodeCount = buffer.getInt(44);
+        int nameIds = BinaryDocument.HEADER_SIZE + BinaryDocument.align(buffer.getInt(56))
+                + (nameCount + 1 + valueCount + 1 + 2 * nodeCount) * 4;
+        buffer.putInt(nameIds, nameCount);
+
+        BinaryDocument binary = new BinaryDocument(buffer);
+        try {
+            binary.getTagName(0);
+            fail("name id past the table read");
+        } catch (UncheckedIOException expected) {
+        }
+    }
+
+    @Test
+    public void cacheFindsOnlyMatchingSources() throws Exception {
+        File source = folder.newFile("doc.xml");
+        Files.write(source.toPath(), XML.getBytes("UTF-8"));
+        File directory = folder.newFolder("cache");
+        BinaryDocumentCache cache = new BinaryDocumentCache(directory);
+        XMLDocument document = parse(XML);
+
+        assertNull(cache.lookup(source));
+        cache.store(source, document);
+        BinaryDocument cached = cache.lookup(source);
+        assertNotNull(cached);
+        assertEquals(print(document), print(cached));
+
+        //another size
+        Files.write(source.toPath(), (XML + "\n").getBytes("UTF-8"));
+        assertNull(cache.lookup(source));
+
+        //the same size and modification time, other bytes
+        cache.store(source, document);
+        assertNotNull(cache.lookup(source));
+        long modified = source.lastModified();
+        Files.write(source.toPath(), (XML + " ").getBytes("UTF-8"));
+        assertTrue(source.setLastModified(modified));
+        assertNull(cache.lookup(source));
+
+        //another variant
+        cache.store(source, document);
+        assertNotNull(cache.lookup(source));
+        assertNull(new BinaryDocumentCache(directory, "table-256").lookup(source));
+    }
+
+    @Test
+    public void damagedBinaryFormIsAMiss() throws Exception {
+        File source = folder.newFile("doc.xml");
+        Files.write(source.toPath(), XML.getBytes("UTF-8"));
+        File directory = folder.newFolder("cache");
+        BinaryDocumentCache cache = new BinaryDocumentCache(directory);
+        cache.store(source, parse(XML));
+        File[] stored = directory.listFiles();
+        assertNotNull(stored);
+        assertEquals(1, stored.length);
+        byte[] bytes = Files.readAllBytes(stored[0].toPath());
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        int nameOffsets = BinaryDocument.HEADER_SIZE + BinaryDocument.align(buffer.getInt(56));
+        int nodeNameIds = nameOffsets + (buffer.getInt(36) + 1 + buffer.getInt(40) + 1 + 2 * buffer.getInt(44)) * 4;
+
+        //the header
+        assertMissWith(cache, source, stored[0], bytes, 56, -1);
+        //a string offset past the name bytes
+        assertMissWith(cache, source, stored[0], bytes, nameOffsets + 4, Integer.MAX_VALUE);
+        //a name id past the table
+        assertMissWith(cache, source, stored[0], bytes, nodeNameIds, buffer.getInt(36));
+        //a parent after its child
+        assertMissWith(cache, source, stored[0], bytes, nodeNameIds - 2 * buffer.getInt(44) * 4 + 4, 5);
+    }
+
+    //the binary form with one int changed isn't found, and the untouched one still is
+    private static void assertMissWith(BinaryDocumentCache cache, File source, File stored, byte[] bytes, int offset,
+                                       int value) throws IOException {
+        byte[] damaged = bytes.clone();
+        ByteBuffer.wrap(damaged).putInt(offset, value);
+        Files.write(stored.toPath(), damaged);
+        assertNull(cache.lookup(source));
+        Files.write(stored.toPath(), bytes);
+        assertNotNull(cache.lookup(source));
+    }
+
+    @Test
+    public void failedStoreLeavesNothingBehind() throws Exception {
+        File source = folder.newFile("doc.xml");
+        Files.write(source.toPath(), XML.getBytes("UTF-8"));
+        File directory = folder.newFolder("cache");
+        XMLDocument document = parse(XML);
+        //a value the writer can't encode, so it fails halfway through the temporary file
+        document.getRoot().addAttributeAndValue("broken", null);
+
+        try {
+            new BinaryDocumentCache(directory).store(source, document);
+            fail("stored a document that can't be written");
+        } catch (NullPointerException expected) {
+        }
+        String[] left = directory.list();
+        assertNotNull(left);
+        assertEquals(Arrays.toString(left), 0, left.length);
+    }
+}
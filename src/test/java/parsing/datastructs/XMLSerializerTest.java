@@ -0,0 +1,117 @@
+package parsing.datastructs;
+
+import io.ByteArraySource;
+import io.CharSequenceSource;
+import io.InputSource;
+import io.MappedFileSource;
+import org.junit.Test;
+import parsing.exceptions.IllFormedXMLException;
+import parsing.synal.Parsers;
+import parsing.synal.XMLAutomata;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+public class XMLSerializerTest {
+
+    private static XMLDocument parse(InputSource source) throws IllFormedXMLException {
+        XMLAutomata parser = Parsers.descent(source);
+        parser.parse();
+        return parser.getDocument();
+    }
+
+    private static byte[] serialize(XMLDocument document, String indent) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        XMLSerializer serializer = new XMLSerializer(out);
+        serializer.setIndent(indent);
+        serializer.write(document);
+        serializer.flush();
+        return out.toByteArray();
+    }
+
+    private static String print(XMLDocument document) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        TreePrinter printer = new TreePrinter(sb);
+        printer.print(document.getRoot());
+        printer.flush();
+        return sb.toString();
+    }
+
+    //what is written parses back into the same tree, and writing that gives the same bytes
+    private static void assertRoundTrip(XMLDocument document) throws Exception {
+        byte[] written = serialize(document, null);
+        XMLDocument read = parse(new ByteArraySource(written, "written"));
+        assertEquals(print(document), print(read));
+        assertEquals(document.getStandalone(), read.getStandalone());
+        assertArrayEquals(written, serialize(read, null));
+    }
+
+    @Test
+    public void quotesAndNonAscii() throws Exception {
+        XMLDocument document = parse(new CharSequenceSource("<?xml version=\"1.0\" standalone=\"no\"?>" +
+                "<r a='say \"hi\"' b=\"it's\" c=\"\u00e9\u20ac\ud83d\ude00\">x > y<e/></r>", "test"));
+        assertRoundTrip(document);
+
+        //attributes come out in the element's order, so they are only looked for
+        String written = new String(serialize(document, null), StandardCharsets.UTF_8);
+        assertTrue(written, written.startsWith("<?xml version=\"1.0\" standalone=\"no\"?>\n<r "));
+        assertTrue(written, written.contains(" a='say \"hi\"'"));
+        assertTrue(written, written.contains(" b=\"it's\""));
+        assertTrue(written, written.contains(" c=\"\u00e9\u20ac\ud83d\ude00\""));
+        assertTrue(written, written.endsWith(">x > y<e/></r>\n"));
+    }
+
+    @Test
+    public void sampleFiles() throws Exception {
+        File[] samples = new File(".").listFiles((dir, name) -> name.startsWith("myxml_") && name.endsWith(".xml"));
+        assertNotNull(samples);
+        for (File sample : samples) {
+            XMLDocument document;
+            try {
+                document = parse(new MappedFileSource(sample.getPath()));
+            } catch (IllFormedXMLException e) {
+                continue;
+            }
+            assertRoundTrip(document);
+
+            //pretty printing only adds whitespace between elements, which the parser drops again
+            XMLDocument pretty = parse(new ByteArraySource(serialize(document, "  "), "pretty"));
+            assertEquals(sample.getName(), print(document), print(pretty));
+        }
+    }
+
+    @Test
+    public void prettyMixedContentIsStable() throws Exception {
+        XMLDocument document = parse(new CharSequenceSource(
+                "<r><m>text<a>in<b/></a></m><e><c>x</c><d/></e></r>", "test"));
+        byte[] once = serialize(document, "  ");
+        XMLDocument pretty = parse(new ByteArraySource(once, "pretty"));
+        assertEquals(print(document), print(pretty));
+        assertArrayEquals(new String(once, StandardCharsets.UTF_8), once, serialize(pretty, "  "));
+        assertTrue(new String(once, StandardCharsets.UTF_8).endsWith("\n" +
+                "  <m>text<a>in<b/></a></m>\n" +
+                "  <e>\n" +
+                "    <c>x</c>\n" +
+                "    <d/>\n" +
+                "  </e>\n" +
+                "</r>\n"));
+    }
+
+    @Test
+    public void channelGetsTheSameBytes() throws Exception {
+        XMLDocument document = parse(new CharSequenceSource("<r><a x=\"1\">text</a><b/></r>", "test"));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        XMLSerializer serializer = new XMLSerializer(Channels.newChannel(out));
+        serializer.write(document);
+        serializer.flush();
+        assertArrayEquals(serialize(document, null), out.toByteArray());
+    }
+}
@@ -0,0 +1,53 @@
+package parsing.lexer;
+
+import io.CharSequenceSource;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static parsing.XMLToken.*;
+
+public class TokenizerTest {
+
+    @Test
+    public void replayedTokensUpdateHasNext() {
+        Tokenizer toker = new Tokenizer(new CharSequenceSource("<a/>", "test"));
+        toker.mark();
+        assertEquals(KIND_SMALLER_THAN, toker.next());
+        assertEquals(KIND_NAME, toker.next());
+        assertEquals(KIND_EMPTY_TAG_END, toker.next());
+        assertEquals(KIND_EOF, toker.next());
+        assertFalse(toker.hasNext());
+
+        toker.consumeMark();
+        assertEquals(KIND_SMALLER_THAN, toker.next());
+        assertTrue(toker.hasNext());
+        assertEquals(0, toker.getTokenStart());
+        assertEquals(KIND_NAME, toker.next());
+        assertEquals(KIND_EMPTY_TAG_END, toker.next());
+        assertEquals(KIND_EOF, toker.next());
+        assertFalse(toker.hasNext());
+    }
+
+    @Test
+    public void nestedMarksRewindTheWindow() {
+        Tokenizer toker = new Tokenizer(new CharSequenceSource("<a b='c'/>", "test"));
+        toker.next();
+        toker.mark();
+        toker.next();
+        toker.mark();
+        toker.next();
+        toker.next();
+        assertEquals(2, toker.getMarkDepth());
+        assertEquals(4, toker.getTokenIndex());
+
+        toker.unmark();
+        toker.next();
+        toker.consumeMark();
+        assertEquals(0, toker.getMarkDepth());
+        assertEquals(1, toker.getTokenIndex());
+        assertEquals(KIND_NAME, toker.next());
+        assertTrue(toker.tokenEquals("a"));
+    }
+}
@@ -0,0 +1,81 @@
+package parsing.synal;
+
+import io.CharSequenceSource;
+import io.InputSource;
+import io.MappedFileSource;
+import org.junit.Test;
+import parsing.datastructs.XMLDocument;
+import parsing.datastructs.XMLSerializer;
+import parsing.exceptions.IllFormedXMLException;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * The descent and the table driven engine implement the same grammar, so they have to accept the same documents,
+ * build the same trees out of them and fail on the same token otherwise.
+ */
+public class EngineAgreementTest {
+
+    //the serialized tree, or where the parse failed
+    private static String outcome(Automata parser) throws IOException {
+        try {
+            parser.parse();
+        } catch (IllFormedXMLException e) {
+            return "error at " + e.getLine() + ":" + e.getColumn();
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        XMLSerializer serializer = new XMLSerializer(out);
+        XMLDocument document = parser.getDocument();
+        serializer.write(document);
+        serializer.flush();
+        return out.toString("UTF-8");
+    }
+
+    private static void assertAgree(String name, InputSource descent, InputSource table) throws IOException {
+        assertEquals(name, outcome(Parsers.descent(descent)), outcome(Parsers.table(table)));
+    }
+
+    private static void assertAgree(String xml) throws IOException {
+        assertAgree(xml, new CharSequenceSource(xml, "test"), new CharSequenceSource(xml, "test"));
+    }
+
+    @Test
+    public void sampleFiles() throws IOException {
+        File[] samples = new File(".").listFiles((dir, name) -> name.startsWith("myxml_") && name.endsWith(".xml"));
+        assertNotNull(samples);
+        assertTrue("no sample files in " + new File(".").getAbsolutePath(), samples.length > 0);
+        Arrays.sort(samples);
+        for (File sample : samples) {
+            String path = sample.getPath();
+            assertAgree(sample.getName(), new MappedFileSource(path), new MappedFileSource(path));
+        }
+    }
+
+    @Test
+    public void nothingButMiscAfterTheRoot() throws IOException {
+        assertAgree("<a/> junk");
+        assertAgree("<a/><b/>");
+        assertAgree("<a></a>\n<a></a>");
+        assertAgree("<a/><!-- never closed");
+        assertAgree("<a/>\n<!-- fine -->\n");
+        assertAgree("<?xml version=\"1.0\"?><a/>\n");
+    }
+
+    @Test
+    public void whitespaceAndQuotesInTags() throws IOException {
+        assertAgree("<a b=\"1\"c=\"2\"/>");
+        assertAgree("<a b=\"1\" c='2'/>");
+        assertAgree("<a b = \"1\"\n\tc='2' ></a>");
+        assertAgree("<?xml version=\"1.0\" standalone=yes?><a/>");
+        assertAgree("<?xml version=\"1.0\"standalone=\"yes\"?><a/>");
+        assertAgree("<?xml version=\"1.0\" standalone='no' ?><a/>");
+        assertAgree("<?xml version=1.0?><a/>");
+    }
+}
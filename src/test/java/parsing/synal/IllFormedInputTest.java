@@ -0,0 +1,133 @@
+package parsing.synal;
+
+import io.ByteArraySource;
+import io.CharSequenceSource;
+import org.junit.Test;
+import parsing.datastructs.XMLDocument;
+import parsing.exceptions.IllFormedXMLException;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/**
+ * Inputs outside the grammar have to fail the parse in both engines, and nothing the lexer couldn't classify may end
+ * up in the tree as text.
+ */
+public class IllFormedInputTest {
+
+    static XMLDocument parseDescent(String xml) throws IllFormedXMLException {
+        XMLAutomata parser = Parsers.descent(new CharSequenceSource(xml, "test"));
+        parser.parse();
+        return parser.getDocument();
+    }
+
+    static XMLDocument parseTable(String xml) throws IllFormedXMLException {
+        TableDrivenAutomata parser = Parsers.table(new CharSequenceSource(xml, "test"));
+        parser.parse();
+        return parser.getDocument();
+    }
+
+    //the tag name is spliced in as raw bytes, so it can be invalid UTF-8
+    private static void assertNameRejected(byte... name) {
+        byte[] xml = new byte[name.length + 3];
+        xml[0] = '<';
+        System.arraycopy(name, 0, xml, 1, name.length);
+        xml[name.length + 1] = '/';
+        xml[name.length + 2] = '>';
+        try {
+            Parsers.descent(new ByteArraySource(xml, "test")).parse();
+            fail("descent parser accepted " + Arrays.toString(name));
+        } catch (IllFormedXMLException expected) {
+        }
+        try {
+            Parsers.table(new ByteArraySource(xml, "test")).parse();
+            fail("table driven parser accepted " + Arrays.toString(name));
+        } catch (IllFormedXMLException expected) {
+        }
+    }
+
+    private static void assertRejected(String xml) {
+        try {
+            parseDescent(xml);
+            fail("descent parser accepted " + xml);
+        } catch (IllFormedXMLException expected) {
+        }
+        try {
+            parseTable(xml);
+            fail("table driven parser accepted " + xml);
+        } catch (IllFormedXMLException expected) {
+        }
+    }
+
+    @Test
+    public void textIsKept() throws IllFormedXMLException {
+        assertEquals(Collections.singletonList("some text"), parseDescent("<a>some text</a>").getRoot().getContents());
+        assertEquals(Collections.singletonList("some text"), parseTable("<a>some text</a>").getRoot().getContents());
+    }
+
+    @Test
+    public void commentInContentIsNotText() {
+        assertRejected("<a><!-- c --></a>");
+        assertRejected("<a>before<!-- c -->after</a>");
+    }
+
+    @Test
+    public void commentsAreMisc() throws IllFormedXMLException {
+        String xml = "<?xml version=\"1.0\"?>\n<!-- before -->\n<a>text</a>\n<!-- after - with a dash --><!---->\n";
+        assertEquals(Collections.singletonList("text"), parseDescent(xml).getRoot().getContents());
+        assertEquals(Collections.singletonList("text"), parseTable(xml).getRoot().getContents());
+        assertEquals("a", parseDescent("<!--\nno declaration\n--><a/>").getRoot().getTagName());
+        assertEquals("a", parseTable("<!--\nno declaration\n--><a/>").getRoot().getTagName());
+    }
+
+    @Test
+    public void malformedCommentIsRejected() {
+        assertRejected("<!-- a -- b --><a/>");
+        assertRejected("<!-- ends in three dashes ---><a/>");
+        assertRejected("<!-- before the declaration --><?xml version=\"1.0\"?><a/>");
+    }
+
+    @Test
+    public void onlyMiscMayFollowTheRoot() {
+        assertRejected("<a/> junk");
+        assertRejected("<a/><b/>");
+        assertRejected("<a></a>\n<a></a>");
+        assertRejected("<a/><!-- never closed");
+    }
+
+    @Test
+    public void attributesNeedWhitespaceAndQuotes() {
+        assertRejected("<a b=\"1\"c=\"2\"/>");
+        assertRejected("<a b=1/>");
+        assertRejected("<?xml version=\"1.0\" standalone=yes?><a/>");
+        assertRejected("<?xml version=1.0?><a/>");
+        assertRejected("<?xml version=\"1.0\"standalone=\"yes\"?><a/>");
+    }
+
+    @Test
+    public void malformedUtf8InNamesIsRejected() throws IllFormedXMLException {
+        //a lone continuation byte, a truncated sequence, an overlong '/', an encoded surrogate, past U+10FFFF
+        assertNameRejected((byte) 'a', (byte) 0x80);
+        assertNameRejected((byte) 0xC3);
+        assertNameRejected((byte) 'a', (byte) 0xC0, (byte) 0xAF);
+        assertNameRejected((byte) 0xED, (byte) 0xA0, (byte) 0x80);
+        assertNameRejected((byte) 0xF4, (byte) 0x90, (byte) 0x80, (byte) 0x80);
+
+        //U+FFFD itself is a NameStartChar
+        byte[] replacement = "<\u00e9\ufffd/>".getBytes(StandardCharsets.UTF_8);
+        XMLAutomata parser = Parsers.descent(new ByteArraySource(replacement, "test"));
+        parser.parse();
+        assertEquals("\u00e9\ufffd", parser.getDocument().getRoot().getTagName());
+    }
+
+    @Test
+    public void ampersandIsRejected() {
+        assertRejected("<a>x & y</a>");
+        assertRejected("<a>x &amp; y</a>");
+        assertRejected("<a b=\"x&y\"/>");
+    }
+}
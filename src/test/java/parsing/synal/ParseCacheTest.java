@@ -0,0 +1,97 @@
+package parsing.synal;
+
+import org.junit.Test;
+import parsing.datastructs.XMLDocument;
+import parsing.exceptions.IllFormedXMLException;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ParseCacheTest {
+
+    //payloads of the same size, so a cache holds a known number of them
+    private static byte[] payload(String kind, int i) {
+        String id = String.format("%s%05d", kind, i);
+        return ("<r><" + id + " a=\"" + id + "\">text " + id + "</" + id + "></r>").getBytes(StandardCharsets.UTF_8);
+    }
+
+    //room for about this many payloads in the main space
+    private static ParseCache cacheFor(int payloads) throws IllFormedXMLException {
+        XMLDocument sample = new ParseCache(Long.MAX_VALUE).parse(payload("any", 0), "sample");
+        //and half a payload to spare, the window takes the other 1%
+        return new ParseCache(sample.estimateRetainedBytes() * (2 * payloads + 1) / 2 * 100 / 99);
+    }
+
+    @Test
+    public void sameBytesSameDocument() throws IllFormedXMLException {
+        ParseCache cache = new ParseCache(1 << 20);
+        byte[] bytes = payload("a", 1);
+        XMLDocument first = cache.parse(bytes, "first");
+        XMLDocument second = cache.parse(bytes.clone(), "second");
+
+        assertSame(first, second);
+        assertTrue(first.isFrozen());
+        assertEquals(1, cache.getMissCount());
+        assertEquals(1, cache.getHitCount());
+        assertNotSame(first, cache.parse(payload("a", 2), "other"));
+    }
+
+    @Test
+    public void illFormedPayloadsAreNotKept() {
+        ParseCache cache = new ParseCache(1 << 20);
+        try {
+            cache.parse("<r>".getBytes(StandardCharsets.UTF_8), "broken");
+            fail("ill-formed payload parsed");
+        } catch (IllFormedXMLException expected) {
+        }
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void moreFrequentPayloadsEvictTheOthers() throws IllFormedXMLException {
+        ParseCache cache = cacheFor(20);
+        for (int i = 0; i < 20; i++)
+            cache.parse(payload("old", i), "old");
+        assertEquals(0, cache.getEvictionCount());
+
+        //seen twice, these are more frequent than anything cached and push it out
+        for (int i = 0; i < 20; i++) {
+            cache.parse(payload("new", i), "new");
+            cache.parse(payload("new", i), "new");
+            assertTrue(cache.getRetainedBytes() <= cache.getMaxRetainedBytes());
+        }
+        assertEquals(20, cache.size());
+        assertTrue(cache.getEvictionCount() >= 20);
+
+        long hits = cache.getHitCount();
+        for (int i = 0; i < 20; i++)
+            cache.parse(payload("new", i), "new");
+        assertEquals(hits + 20, cache.getHitCount());
+        cache.parse(payload("old", 0), "old");
+        assertEquals(hits + 20, cache.getHitCount());
+    }
+
+    @Test
+    public void oneOffsDontFlushFrequentPayloads() throws IllFormedXMLException {
+        ParseCache cache = cacheFor(20);
+        for (int round = 0; round < 5; round++) {
+            for (int i = 0; i < 10; i++)
+                cache.parse(payload("hot", i), "hot");
+        }
+
+        //a scan of payloads that are never asked for again
+        for (int i = 0; i < 500; i++)
+            cache.parse(payload("one", i), "one");
+
+        long hits = cache.getHitCount();
+        for (int i = 0; i < 10; i++)
+            cache.parse(payload("hot", i), "hot");
+        assertEquals(hits + 10, cache.getHitCount());
+        assertTrue(cache.getRetainedBytes() <= cache.getMaxRetainedBytes());
+    }
+}